@@ -0,0 +1,509 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+// Incremental Pass 1 + object code for the edit-assemble loop.
+// The source is cut into content-defined blocks: a block ends after a line whose hash hits a
+// boundary pattern, so an edit only changes the blocks it touches and every later block keeps
+// its hash. The state file keeps, per block: content hash, LC on entry and exit, the statements
+// Pass 1 produced for it (the IC) and the object code emitted for them, plus the run's SYMTAB.
+//
+// On the next run each block is
+//   reused    - hash known, same LC on entry: nothing is lexed;
+//   shifted   - hash known, LC on entry moved (an earlier block grew or shrank): the block's
+//               addresses are relocated by the difference, still without lexing;
+//   re-lexed  - new or edited text, or a moved block that contains START (absolute LC).
+// SYMTAB is then rebuilt by replaying the blocks' label definitions and references in order, so
+// IDs, addresses and undefined-symbol errors match a full run. Object code is re-emitted only for
+// blocks that were shifted or re-lexed, or that reference a symbol whose address changed.
+//
+// Literals: a pool (LTORG / END) takes one word per literal still open when it is reached, so a
+// block with a pool statement is only taken over when the same literals are open on entry
+// (pendingIn, a hash of their text in order); otherwise it is re-lexed. LITTAB is replayed along
+// with SYMTAB, and a block is re-emitted when a literal it uses got another address.
+class IncrementalAssembler {
+    static final byte[] MAGIC = {'I', 'N', 'C'};
+    static final byte VERSION = 2;
+
+    // Content-defined block size: at least MIN_LINES, cut where (line hash & MASK) == 0, at most MAX_LINES
+    static final int MIN_LINES = 32;
+    static final int BOUNDARY_MASK = 127;
+    static final int MAX_LINES = 2048;
+
+    static final long FNV_BASIS = 0xCBF29CE484222325L;
+    static final long FNV_PRIME = 0x100000001B3L;
+
+    // Pass 1 result for one block, one entry per non-empty line (struct of arrays)
+    static final class Block {
+        long hash;
+        int bytes;
+        int lcIn, lcOut;
+        boolean hasStart;
+        boolean hasPool;    // contains LTORG / END
+        long pendingIn;     // literals open on entry (see pendingHash)
+        int n;
+        int[] lc;       // LC when the statement was read
+        int[] op;       // packed Opcodes entry, Opcodes.NONE if there is no mnemonic
+        int[] reg;
+        int[] kind;     // ICRecord.NONE / CONST / SYMBOL / LITERAL
+        int[] value;    // constant operand; for LTORG / END the number of literals placed
+        int[] label;    // SymbolPool id of the label, -1 if none
+        int[] size;     // DS size given to the label, -1 if none
+        int[] ref;      // SymbolPool id of the symbol operand, -1 if none
+        int[] lit;      // SymbolPool id of the literal operand's text, -1 if none
+        int[] litAddress; // address the literal operand had when code was emitted
+        byte[] code;    // object code for the block, null = must be emitted
+
+        // Rebuilt by every run's replay, not saved
+        a1.LiteralEntry[] literals; // LITTAB entry per literal operand
+        int firstPool;              // POOLTAB index of the block's first non-empty pool
+
+        Block(int capacity) {
+            lc = new int[capacity];
+            op = new int[capacity];
+            reg = new int[capacity];
+            kind = new int[capacity];
+            value = new int[capacity];
+            label = new int[capacity];
+            size = new int[capacity];
+            ref = new int[capacity];
+            lit = new int[capacity];
+            litAddress = new int[capacity];
+        }
+
+        // Same statements relocated by delta; code has to be emitted again
+        Block shift(int delta) {
+            Block b = new Block(0);
+            b.hash = hash; b.bytes = bytes; b.n = n; b.hasStart = hasStart;
+            b.hasPool = hasPool; b.pendingIn = pendingIn;
+            b.lcIn = lcIn + delta;
+            b.lcOut = lcOut + delta;
+            b.lc = lc.clone();
+            for (int i = 0; i < n; i++) b.lc[i] += delta;
+            b.op = op; b.reg = reg; b.kind = kind; b.value = value;
+            b.label = label; b.size = size; b.ref = ref;
+            b.lit = lit; b.litAddress = litAddress;
+            return b;
+        }
+
+        int[][] columns() {
+            return new int[][] {lc, op, reg, kind, value, label, size, ref, lit, litAddress};
+        }
+    }
+
+    private final a1 asm;  // unit whose SYMTAB is rebuilt
+    private final SymbolPool pool;
+    private final Map<Long, List<Block>> previous = new HashMap<>();
+    private final IntTable previousAddress = new IntTable(); // pool id -> address in the last run
+    private final List<Block> blocks = new ArrayList<>();
+    // Literals open at the current block boundary (SymbolPool ids of their text, in order of first use)
+    private final Set<Integer> open = new LinkedHashSet<>();
+
+    int reused, shifted, relexed, emitted;
+    long lines;              // source lines read
+    int emittedStatements;   // statements in the blocks whose object code was re-emitted
+
+    IncrementalAssembler(a1 asm) {
+        this.asm = asm;
+        this.pool = asm.pool;
+    }
+
+    int blocks() {
+        return blocks.size();
+    }
+
+    void run(String source, String stateFile, ObjectCodeWriter obj) throws IOException {
+        if (Files.exists(Paths.get(stateFile))) {
+            try {
+                load(stateFile);
+            } catch (IOException e) {
+                // Stale or foreign state file: fall back to a full build
+                previous.clear();
+                previousAddress.clear();
+            }
+        }
+
+        byte[] text = Files.readAllBytes(Paths.get(source));
+        assemble(ByteBuffer.wrap(text), text);
+
+        replaySymbols();
+        emit(obj);
+        if (relexed + shifted + emitted > 0) save(stateFile); // otherwise the state is already current
+    }
+
+    // ================= PASS 1 OVER BLOCKS =================
+
+    // One pass over the bytes: per-line hash decides the block boundaries, block hash = mix of line hashes
+    private void assemble(ByteBuffer buf, byte[] text) {
+        Lexer lx = new Lexer(pool);
+        int lc = 0;
+        int blockStart = 0, lines = 0;
+        long blockHash = FNV_BASIS;
+        long h = FNV_BASIS;
+
+        for (int pos = 0; pos < text.length; pos++) {
+            byte c = text[pos];
+            h = (h ^ (c & 0xFF)) * FNV_PRIME;
+            if (c != '\n' && pos + 1 < text.length) continue;
+
+            blockHash = (blockHash ^ h) * FNV_PRIME;
+            lines++;
+            this.lines++;
+            int end = pos + 1;
+            if (end == text.length || lines >= MAX_LINES || (lines >= MIN_LINES && (h & BOUNDARY_MASK) == 0)) {
+                lc = block(buf, lx, blockStart, end, lines, blockHash, lc);
+                blockStart = end;
+                lines = 0;
+                blockHash = FNV_BASIS;
+            }
+            h = FNV_BASIS;
+        }
+    }
+
+    // Takes the block from the previous run when possible, otherwise lexes it. Returns LC on exit.
+    private int block(ByteBuffer buf, Lexer lx, int from, int to, int lines, long hash, int lcIn) {
+        Block match = null;
+        List<Block> known = previous.get(hash);
+        if (known != null) {
+            long pending = pendingHash();
+            for (Block b : known) {
+                if (b.bytes != to - from || (b.hasPool && b.pendingIn != pending)) continue;
+                if (b.lcIn == lcIn) { match = b; break; }
+                if (!b.hasStart && match == null) match = b;
+            }
+        }
+
+        Block b;
+        if (match != null && match.lcIn == lcIn) {
+            b = match;
+            reused++;
+            trackLiterals(b);
+        } else if (match != null) {
+            b = match.shift(lcIn - match.lcIn);
+            shifted++;
+            trackLiterals(b);
+        } else {
+            b = lex(buf, lx, from, to, lines, lcIn);
+            b.hash = hash;
+            relexed++;
+        }
+        blocks.add(b);
+        return b.lcOut;
+    }
+
+    // Order-sensitive hash of the open literals' text (pool ids differ between runs)
+    private long pendingHash() {
+        long h = FNV_BASIS;
+        for (int id : open) h = (h ^ pool.name(id).hashCode()) * FNV_PRIME;
+        return h;
+    }
+
+    // Open literals after a block that was taken over without lexing
+    private void trackLiterals(Block b) {
+        for (int i = 0; i < b.n; i++) {
+            if (b.lit[i] != -1) open.add(b.lit[i]);
+            if (b.op[i] == Opcodes.LTORG || b.op[i] == Opcodes.END) open.clear();
+        }
+    }
+
+    // Same statement rules as a1.processLine, recorded instead of written out
+    private Block lex(ByteBuffer buf, Lexer lx, int from, int to, int lines, int lc) {
+        Block b = new Block(lines);
+        b.bytes = to - from;
+        b.lcIn = lc;
+        b.pendingIn = pendingHash();
+
+        for (int pos = from; pos < to; ) {
+            int eol = pos;
+            while (eol < to && buf.get(eol) != '\n') eol++;
+            lx.lex(buf, pos, eol);
+            pos = eol + 1;
+            if (lx.count == 0) continue;
+
+            int i = b.n++;
+            int ptr = 0;
+            b.label[i] = -1;
+            b.size[i] = -1;
+            b.lc[i] = lc;
+            if (lx.kind[0] == Lexer.LABEL) {
+                b.label[i] = lx.id[0];
+                ptr++;
+            }
+            int mnemonic = (ptr < lx.count) ? ptr++ : -1;
+            int op1 = (ptr < lx.count) ? ptr++ : -1;
+            int op2 = (ptr < lx.count) ? ptr++ : -1;
+
+            b.ref[i] = (op2 != -1 && a1.isSymbolOperand(lx.kind[op2])) ? lx.id[op2] : -1;
+            b.lit[i] = (op2 != -1 && lx.kind[op2] == Lexer.LITERAL) ? lx.id[op2] : -1;
+            if (b.lit[i] != -1) open.add(b.lit[i]);
+            int op = (mnemonic != -1 && lx.kind[mnemonic] == Lexer.MNEMONIC) ? lx.keyword[mnemonic] : Opcodes.NONE;
+            b.op[i] = op;
+            b.reg[i] = (op1 != -1 && lx.kind[op1] == Lexer.REGISTER) ? lx.keyword[op1] : 0;
+            b.kind[i] = ICRecord.NONE;
+            if (b.ref[i] != -1) {
+                b.kind[i] = ICRecord.SYMBOL;
+            } else if (b.lit[i] != -1) {
+                b.kind[i] = ICRecord.LITERAL;
+            } else if (op2 != -1 && lx.kind[op2] == Lexer.CONSTANT) {
+                b.kind[i] = ICRecord.CONST;
+                b.value[i] = lx.parseInt(op2);
+            } else if (op1 != -1 && lx.kind[op1] == Lexer.CONSTANT) {
+                b.kind[i] = ICRecord.CONST;
+                b.value[i] = lx.parseInt(op1);
+            }
+
+            int operand = (op1 != -1 && lx.kind[op1] == Lexer.CONSTANT) ? lx.parseInt(op1) : 0;
+            if (op == Opcodes.START) {
+                b.hasStart = true;
+                lc = operand;
+            } else if (op == Opcodes.DS) {
+                if (b.label[i] != -1) b.size[i] = operand;
+                lc += operand;
+            } else if (op != Opcodes.NONE) {
+                lc += Opcodes.length(op);
+            } else {
+                lc += 1;
+            }
+            if (op == Opcodes.LTORG || op == Opcodes.END) {
+                b.hasPool = true;
+                b.value[i] = open.size(); // one word per open literal
+                lc += open.size();
+                open.clear();
+            }
+        }
+        b.lcOut = lc;
+        return b;
+    }
+
+    // ================= SYMTAB =================
+
+    // Rebuilds a1's SYMTAB (and its undefined-symbol fix-up list) and LITTAB / POOLTAB exactly as
+    // a full Pass 1 would
+    private void replaySymbols() {
+        for (Block b : blocks) {
+            b.firstPool = asm.POOLTAB.size();
+            for (int i = 0; i < b.n; i++) {
+                if (b.lit[i] != -1) {
+                    if (b.literals == null) b.literals = new a1.LiteralEntry[b.n];
+                    b.literals[i] = asm.useLiteral(b.lit[i], pool.name(b.lit[i]));
+                }
+                if (b.op[i] == Opcodes.LTORG || b.op[i] == Opcodes.END) {
+                    asm.LC = b.lc[i];
+                    asm.assignPool();
+                }
+                if (b.label[i] != -1) {
+                    a1.SymbolEntry e = asm.findSymbol(b.label[i]);
+                    if (e == null) {
+                        e = asm.addSymbol(b.label[i], pool.name(b.label[i]), b.lc[i]);
+                    } else {
+                        e.address = b.lc[i];
+                        asm.fixups.remove(e.name);
+                    }
+                    if (b.size[i] != -1) e.length = b.size[i];
+                }
+                if (b.ref[i] != -1) {
+                    a1.SymbolEntry e = asm.findSymbol(b.ref[i]);
+                    if (e == null) e = asm.addSymbol(b.ref[i], pool.name(b.ref[i]), -1);
+                    if (e.address == -1) asm.fixups.computeIfAbsent(e.name, k -> new ArrayList<>()).add(b.lc[i]);
+                }
+            }
+        }
+        // Literals after the last LTORG when END is missing
+        asm.LC = blocks.isEmpty() ? 0 : blocks.get(blocks.size() - 1).lcOut;
+        trailingPool = asm.poolStart;
+        asm.assignPool();
+    }
+
+    private int trailingPool; // LITTAB index of the literals placed at the end of the source
+
+    private boolean moved(int poolId) {
+        a1.SymbolEntry e = asm.findSymbol(poolId);
+        int before = previousAddress.get(poolId);
+        return before == IntTable.UNDEFINED || before != e.address;
+    }
+
+    // ================= OBJECT CODE =================
+
+    private void emit(ObjectCodeWriter obj) {
+        obj.str("LC\tMachine Code").newline();
+        obj.str("----------------------------").newline();
+        for (Block b : blocks) {
+            if (b.code != null) {
+                for (int i = 0; i < b.n; i++) {
+                    if ((b.kind[i] == ICRecord.SYMBOL && moved(b.ref[i]))
+                            || (b.kind[i] == ICRecord.LITERAL && b.literals[i].address != b.litAddress[i])) {
+                        b.code = null;
+                        break;
+                    }
+                }
+            }
+            if (b.code == null) {
+                ObjectCodeWriter w = ObjectCodeWriter.memory();
+                translate(b, w);
+                b.code = w.toByteArray();
+                emitted++;
+                emittedStatements += b.n;
+            }
+            obj.bytes(b.code);
+        }
+        for (int i = trailingPool; i < asm.LITTAB.size(); i++) {
+            a1.LiteralEntry e = asm.LITTAB.get(i);
+            obj.dec(e.address).tab().dec(e.value, 6).newline();
+        }
+        obj.flush();
+    }
+
+    // Same listing as AssemblerPass2.translate; undefined symbols load as 000 (reported with SYMTAB)
+    private void translate(Block b, ObjectCodeWriter w) {
+        b.litAddress = new int[b.n]; // own copy: a shifted block shares its columns with the old one
+        int pools = b.firstPool;
+        for (int i = 0; i < b.n; i++) {
+            int op = b.op[i];
+            if (op == Opcodes.NONE) continue;
+            int cls = Opcodes.cls(op);
+            if ((op == Opcodes.LTORG || op == Opcodes.END) && b.value[i] > 0) {
+                // Pool: one DC word per literal
+                int first = asm.POOLTAB.get(pools++);
+                for (int k = first; k < first + b.value[i]; k++) {
+                    a1.LiteralEntry e = asm.LITTAB.get(k);
+                    w.dec(e.address).tab().dec(e.value, 6).newline();
+                }
+            } else if (cls == ICRecord.DL) {
+                if (op == Opcodes.DC) w.dec(b.lc[i]).tab().dec(b.value[i], 6).newline();
+            } else if (cls == ICRecord.IS) {
+                int address = b.value[i];
+                if (b.kind[i] == ICRecord.SYMBOL) address = Math.max(asm.findSymbol(b.ref[i]).address, 0);
+                else if (b.kind[i] == ICRecord.LITERAL) address = b.litAddress[i] = b.literals[i].address;
+                else if (b.kind[i] == ICRecord.NONE) address = 0;
+                int machine = Opcodes.machineOpcode(Opcodes.opcode(op));
+                w.dec(b.lc[i]).tab();
+                if (machine == Opcodes.NONE) w.str("null");
+                else w.hex(machine, 2);
+                w.dec(b.reg[i]).dec(address, 3).newline();
+            }
+        }
+    }
+
+    // ================= STATE FILE =================
+    // "INC" + version, instruction set fingerprint, names, SYMTAB (name, address), then per block:
+    // hash, size, LC in/out, START / pool flags, open literals hash, statement count, the ten
+    // statement columns, object code.
+    // Columns are written as whole int arrays; symbols are stored by name and re-interned on load,
+    // since pool IDs differ between runs.
+
+    private void save(String stateFile) throws IOException {
+        int names = pool.size();
+        byte[][] nameBytes = new byte[names][];
+        long size = 4 + 4 + 4 + 4 + 8L * asm.SYMTAB.size() + 4;
+        for (int id = 0; id < names; id++) {
+            nameBytes[id] = pool.name(id).getBytes(StandardCharsets.US_ASCII);
+            size += 2 + nameBytes[id].length;
+        }
+        for (Block b : blocks) size += 8 + 4 * 5 + 1 + 8 + 4L * 10 * b.n + 4 + b.code.length;
+        if (size > Integer.MAX_VALUE) throw new IOException("incremental state larger than 2 GB");
+
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.put(MAGIC).put(VERSION);
+        out.putInt(isaFingerprint());
+
+        out.putInt(names);
+        for (byte[] name : nameBytes) out.putShort((short) name.length).put(name);
+
+        out.putInt(asm.SYMTAB.size());
+        for (int id = 0; id < names; id++) {
+            a1.SymbolEntry e = asm.findSymbol(id);
+            if (e != null) out.putInt(id).putInt(e.address);
+        }
+
+        out.putInt(blocks.size());
+        for (Block b : blocks) {
+            out.putLong(b.hash).putInt(b.bytes).putInt(b.lcIn).putInt(b.lcOut);
+            out.put((byte) ((b.hasStart ? 1 : 0) | (b.hasPool ? 2 : 0))).putLong(b.pendingIn).putInt(b.n);
+            for (int[] column : b.columns()) {
+                out.asIntBuffer().put(column, 0, b.n);
+                out.position(out.position() + 4 * b.n);
+            }
+            out.putInt(b.code.length).put(b.code);
+        }
+
+        out.flip();
+        try (FileChannel ch = FileChannel.open(Paths.get(stateFile), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) ch.write(out);
+        }
+    }
+
+    // Cached object code is only valid for the instruction set it was emitted with
+    static int isaFingerprint() {
+        int h = Arrays.hashCode(Opcodes.MNEMONICS) * 31 + Arrays.hashCode(Opcodes.PACKED);
+        for (int op : Opcodes.PACKED) h = h * 31 + Opcodes.machineOpcode(Opcodes.opcode(op));
+        return h * 31 + Arrays.hashCode(Opcodes.REGISTER_CODES);
+    }
+
+    private void load(String stateFile) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(stateFile), StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("incremental state larger than 2 GB");
+            ByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            try {
+                read(in);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("truncated incremental state", e);
+            }
+        }
+    }
+
+    private void read(ByteBuffer in) throws IOException {
+        byte[] head = new byte[4];
+        in.get(head);
+        if (head[0] != MAGIC[0] || head[1] != MAGIC[1] || head[2] != MAGIC[2] || head[3] != VERSION)
+            throw new IOException("not an incremental state file (version " + VERSION + ")");
+        if (in.getInt() != isaFingerprint())
+            throw new IOException("instruction set changed since the state was written");
+
+        int[] remap = new int[in.getInt()];
+        for (int i = 0; i < remap.length; i++) {
+            int len = in.getShort() & 0xFFFF;
+            remap[i] = pool.intern(in, in.position(), in.position() + len);
+            in.position(in.position() + len);
+        }
+
+        for (int n = in.getInt(); n > 0; n--) {
+            int id = remap[in.getInt()];
+            previousAddress.put(id, in.getInt());
+        }
+
+        for (int n = in.getInt(); n > 0; n--) {
+            long hash = in.getLong();
+            int bytes = in.getInt();
+            int lcIn = in.getInt();
+            int lcOut = in.getInt();
+            byte flags = in.get();
+            long pendingIn = in.getLong();
+            Block b = new Block(in.getInt());
+            b.hash = hash;
+            b.bytes = bytes;
+            b.lcIn = lcIn;
+            b.lcOut = lcOut;
+            b.hasStart = (flags & 1) != 0;
+            b.hasPool = (flags & 2) != 0;
+            b.pendingIn = pendingIn;
+            b.n = b.lc.length;
+            for (int[] column : b.columns()) {
+                in.asIntBuffer().get(column, 0, b.n);
+                in.position(in.position() + 4 * b.n);
+            }
+            for (int i = 0; i < b.n; i++) {
+                if (b.label[i] != -1) b.label[i] = remap[b.label[i]];
+                if (b.ref[i] != -1) b.ref[i] = remap[b.ref[i]];
+                if (b.lit[i] != -1) b.lit[i] = remap[b.lit[i]];
+            }
+            b.code = new byte[in.getInt()];
+            in.get(b.code);
+            previous.computeIfAbsent(hash, k -> new ArrayList<>()).add(b);
+        }
+    }
+}
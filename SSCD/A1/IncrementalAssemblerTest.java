@@ -0,0 +1,97 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Checks for incremental reassembly (no test framework: run it, exit status 1 on a failure)
+//   javac -sourcepath .:../common:../A2 IncrementalAssemblerTest.java && java -cp .:../common:../A2 IncrementalAssemblerTest
+public class IncrementalAssemblerTest {
+
+    static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        a1.setupTables();
+        Path dir = Files.createTempDirectory("incremental");
+        Path source = dir.resolve("prog.asm"), state = dir.resolve("prog.inc");
+        try {
+            List<String> lines = generate(5000);
+            rebuild("first run matches a full build", lines, source, state, false);
+
+            lines.add(3, "ADD AREG X");                      // every later block moves by one word
+            rebuild("inserted line matches a full build", lines, source, state, true);
+
+            int middle = unlabelled(lines, lines.size() / 2);
+            lines.set(middle, "MOVER BREG ='77'");           // a new literal in the middle
+            rebuild("changed literal matches a full build", lines, source, state, true);
+
+            lines.remove(unlabelled(lines, lines.size() / 3));
+            rebuild("deleted line matches a full build", lines, source, state, true);
+
+            rebuild("unchanged source matches a full build", lines, source, state, true);
+        } finally {
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(state);
+            Files.deleteIfExists(dir);
+        }
+        System.out.println(failures == 0 ? "All tests passed" : failures + " test(s) failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    // Incremental run over the saved state against Pass 1 + Pass 2 from scratch
+    static void rebuild(String name, List<String> lines, Path source, Path state, boolean expectReuse) throws IOException {
+        Files.write(source, lines, StandardCharsets.US_ASCII);
+
+        IncrementalAssembler inc = new IncrementalAssembler(new a1());
+        ObjectCodeWriter incremental = ObjectCodeWriter.memory();
+        inc.run(source.toString(), state.toString(), incremental);
+
+        a1 pass1 = new a1();
+        ByteArrayOutputStream ic = new ByteArrayOutputStream();
+        try (LineSource src = new MappedSource(source.toString())) {
+            pass1.writeBinaryIC(src, ic);
+        }
+        AssemblerPass2 pass2 = new AssemblerPass2();
+        pass2.out = ObjectCodeWriter.memory();
+        try (ICRecord.Reader in = new ICRecord.Reader(new ByteArrayInputStream(ic.toByteArray()))) {
+            pass2.runBinary(in, 1);
+        }
+
+        boolean same = Arrays.equals(incremental.toByteArray(), pass2.out.toByteArray());
+        boolean reused = !expectReuse || inc.reused + inc.shifted > 0;
+        check(name, same && reused, "blocks " + inc.blocks() + " (reused " + inc.reused + ", shifted " + inc.shifted
+                + ", re-lexed " + inc.relexed + "), output " + (same ? "same" : "differs"));
+    }
+
+    // Labels, backward references, literals, LTORGs and DS areas, fixed seed
+    static List<String> generate(int n) {
+        Random random = new Random(7);
+        List<String> lines = new ArrayList<>();
+        lines.add("START 100 -");
+        for (int i = 0; i < n; i++) {
+            String label = (i % 10 == 0) ? "L" + i + " " : "";
+            int r = random.nextInt(100);
+            if (r < 25) lines.add(label + "MOVER AREG ='" + random.nextInt(20) + "'");
+            else if (r < 28) lines.add(label + "LTORG - -");
+            else if (r < 32) lines.add(label + "DS " + (1 + random.nextInt(4)) + " -");
+            else if (r < 60 && i >= 10) lines.add(label + "ADD BREG L" + (i / 10 - 1) * 10);
+            else lines.add(label + "MOVEM CREG X");
+        }
+        lines.add("X DC 1 -");
+        lines.add("END - -");
+        return lines;
+    }
+
+    // First line from i on without a label, so editing it leaves every reference defined
+    static int unlabelled(List<String> lines, int i) {
+        while (lines.get(i).startsWith("L")) i++;
+        return i;
+    }
+
+    static void check(String name, boolean ok, String detail) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            System.out.println("  got: " + detail);
+            failures++;
+        }
+    }
+}
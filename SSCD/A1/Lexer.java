@@ -0,0 +1,140 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Hand-written tokenizer for Pass 1.
+// Scans one source line in a (reusable) byte buffer and records each token as offsets + a class,
+// so the per-line hot path needs no regex and no substring allocation.
+class Lexer {
+    // Token classes
+    static final int LABEL = 1;     // first token that is not a mnemonic
+    static final int MNEMONIC = 2;  // found in the mnemonic table (common/Opcodes)
+    static final int REGISTER = 3;  // found in the register table (common/Opcodes)
+    static final int CONSTANT = 4;  // all digits, e.g. 05
+    static final int LITERAL = 5;   // ='1'
+    static final int SYMBOL = 6;    // anything else
+    static final int DASH = 7;      // "-" placeholder for a missing operand
+
+    static final int MAX_TOKENS = 8;
+
+    // Current line (token offsets point into this buffer)
+    ByteBuffer buf;
+    int count;
+    final int[] start = new int[MAX_TOKENS];
+    final int[] end = new int[MAX_TOKENS];
+    final int[] kind = new int[MAX_TOKENS];
+    final int[] keyword = new int[MAX_TOKENS]; // packed mnemonic / register code (see Opcodes), -1 otherwise
+    final int[] id = new int[MAX_TOKENS];      // SymbolPool ID for identifiers, -1 otherwise
+
+    // Identifiers are interned once; keywords come from the generated switch tables
+    private final SymbolPool pool;
+    private byte[] scratch = new byte[32];
+
+    Lexer() {
+        this(SymbolPool.SHARED);
+    }
+
+    Lexer(SymbolPool pool) {
+        this.pool = pool;
+    }
+
+    // Tokenize buf[from, to). Returns the number of tokens found.
+    int lex(ByteBuffer buf, int from, int to) {
+        this.buf = buf;
+        count = 0;
+        int i = from;
+        while (i < to && count < MAX_TOKENS) {
+            while (i < to && isSpace(buf.get(i))) i++;
+            if (i >= to) break;
+            int s = i;
+            while (i < to && !isSpace(buf.get(i))) i++;
+            start[count] = s;
+            end[count] = i;
+            classify(count);
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == ',';
+    }
+
+    private void classify(int t) {
+        keyword[t] = -1;
+        id[t] = -1;
+        int s = start[t], e = end[t];
+
+        if (e - s == 1 && buf.get(s) == '-') {
+            kind[t] = DASH;
+        } else if (isDigits(s, e)) {
+            kind[t] = CONSTANT;
+        } else {
+            // Identifier (or literal): interned once; keywords are a length + first-char switch
+            id[t] = pool.intern(buf, s, e);
+            int k;
+            if (buf.get(s) == '=') {
+                kind[t] = LITERAL;
+            } else if ((k = Opcodes.mnemonic(buf, s, e)) != Opcodes.NONE) {
+                kind[t] = MNEMONIC;
+                keyword[t] = k;
+            } else if ((k = Opcodes.register(buf, s, e)) != Opcodes.NONE) {
+                kind[t] = REGISTER;
+                keyword[t] = k;
+            } else {
+                kind[t] = SYMBOL;
+            }
+        }
+
+        // Anything but a mnemonic at the start of the line is a label
+        if (t == 0 && kind[t] != MNEMONIC) {
+            kind[t] = LABEL;
+            keyword[t] = -1;
+            if (id[t] < 0) id[t] = pool.intern(buf, s, e);
+        }
+    }
+
+    private boolean isDigits(int s, int e) {
+        for (int i = s; i < e; i++) {
+            byte b = buf.get(i);
+            if (b < '0' || b > '9') return false;
+        }
+        return true;
+    }
+
+    // --- Token accessors ---
+
+    boolean is(int t, String word) {
+        int len = end[t] - start[t];
+        if (len != word.length()) return false;
+        for (int i = 0; i < len; i++) {
+            if (buf.get(start[t] + i) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    int parseInt(int t) {
+        int v = 0;
+        for (int i = start[t]; i < end[t]; i++) v = v * 10 + (buf.get(i) - '0');
+        return v;
+    }
+
+    void appendTo(int t, StringBuilder sb) {
+        for (int i = start[t]; i < end[t]; i++) sb.append((char) buf.get(i));
+    }
+
+    // Interned name for identifier tokens (no allocation once the identifier is known)
+    String name(int t) {
+        return (id[t] >= 0) ? pool.name(id[t]) : text(t);
+    }
+
+    SymbolPool pool() {
+        return pool;
+    }
+
+    String text(int t) {
+        int len = end[t] - start[t];
+        if (scratch.length < len) scratch = new byte[len];
+        for (int i = 0; i < len; i++) scratch[i] = buf.get(start[t] + i);
+        return new String(scratch, 0, len, StandardCharsets.US_ASCII);
+    }
+}
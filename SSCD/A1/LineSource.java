@@ -0,0 +1,7 @@
+import java.io.*;
+
+// Feeds source lines to the Lexer one at a time.
+interface LineSource extends Closeable {
+    // Lexes the next line into lx. Returns false at end of input.
+    boolean next(Lexer lx) throws IOException;
+}
@@ -0,0 +1,117 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Checks for literal pools and the parallel Pass 1 (no test framework: run it, exit status 1 on a failure)
+//   javac -sourcepath .:../common LiteralPoolTest.java && java -cp .:../common LiteralPoolTest
+public class LiteralPoolTest {
+
+    static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        a1.setupTables();
+        poolsPlacedAtLtorgAndEnd();
+        literalSharedWithinPoolOnly();
+        openLiteralsPlacedWithoutEnd();
+        parallelMatchesSequential();
+        System.out.println(failures == 0 ? "All tests passed" : failures + " test(s) failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    // LTORG places the open pool at its LC; END places the rest after it
+    static void poolsPlacedAtLtorgAndEnd() throws IOException {
+        a1 asm = passOne("START 100 -", "MOVER AREG ='5'", "ADD BREG ='1'", "LTORG - -",
+                "SUB CREG ='2'", "END - -");
+        check("LTORG and END each place a pool", asm.POOLTAB.equals(List.of(0, 2)), "POOLTAB " + asm.POOLTAB);
+        check("first pool follows LTORG", address(asm, 0) == 102 && address(asm, 1) == 103, table(asm));
+        check("second pool follows END", address(asm, 2) == 105, table(asm));
+    }
+
+    // A literal used three times in one pool gets one entry; the next pool gets its own
+    static void literalSharedWithinPoolOnly() throws IOException {
+        a1 asm = passOne("START 100 -", "MOVER AREG ='5'", "ADD BREG ='5'", "SUB CREG ='5'", "LTORG - -",
+                "MULT AREG ='5'", "END - -");
+        check("one entry per literal per pool", asm.LITTAB.size() == 2 && asm.POOLTAB.equals(List.of(0, 1)), table(asm));
+        check("literal reused in a later pool gets a new address", address(asm, 0) == 103 && address(asm, 1) == 105,
+                table(asm));
+    }
+
+    // Without END the literals still open are placed after the last line
+    static void openLiteralsPlacedWithoutEnd() throws IOException {
+        a1 asm = passOne("START 100 -", "MOVER AREG ='7'", "ADD BREG ='8'");
+        check("open literals placed at the end", asm.POOLTAB.equals(List.of(0)) && address(asm, 0) == 102
+                && address(asm, 1) == 103, table(asm));
+    }
+
+    // Chunked Pass 1 writes the same binary IC as the sequential pass, literals and START included
+    static void parallelMatchesSequential() throws IOException {
+        Path file = Files.createTempFile("literalpool", ".asm");
+        try {
+            for (boolean end : new boolean[] {true, false}) {
+                Files.write(file, generate(20000, end), StandardCharsets.US_ASCII);
+                ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+                a1 seq = new a1();
+                try (LineSource src = new MappedSource(file.toString())) {
+                    seq.writeBinaryIC(src, sequential);
+                }
+                ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+                a1 par = new a1();
+                new ParallelPassOne(par, 4).run(file.toString(), parallel);
+                check("parallel IC matches sequential" + (end ? "" : " (no END)"),
+                        Arrays.equals(sequential.toByteArray(), parallel.toByteArray())
+                                && seq.LITTAB.size() == par.LITTAB.size() && seq.POOLTAB.equals(par.POOLTAB),
+                        sequential.size() + " vs " + parallel.size() + " bytes, POOLTAB " + seq.POOLTAB.size()
+                                + " vs " + par.POOLTAB.size());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Literals, LTORGs, a second START, DS areas and backward / forward references, fixed seed
+    static List<String> generate(int n, boolean end) {
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>();
+        lines.add("START 100 -");
+        for (int i = 0; i < n; i++) {
+            String label = (i % 10 == 0) ? "L" + i + " " : "";
+            int r = random.nextInt(100);
+            if (r < 30) lines.add(label + "MOVER AREG ='" + random.nextInt(40) + "'");
+            else if (r < 33) lines.add(label + "LTORG - -");
+            else if (r < 34 && i == n / 2) lines.add("START 2000 -");
+            else if (r < 37) lines.add(label + "DS " + (1 + random.nextInt(4)) + " -");
+            else if (r < 50 && i >= 10) lines.add(label + "ADD BREG L" + (i / 10 - 1) * 10);
+            else lines.add(label + "MOVEM CREG X");
+        }
+        lines.add("X DC 1 -");
+        if (end) lines.add("END - -");
+        else lines.add("SUB DREG ='999'");
+        return lines;
+    }
+
+    static a1 passOne(String... lines) throws IOException {
+        a1 asm = new a1();
+        byte[] text = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.US_ASCII);
+        asm.writeBinaryIC(new StreamSource(new ByteArrayInputStream(text)), new ByteArrayOutputStream());
+        return asm;
+    }
+
+    static int address(a1 asm, int index) {
+        return asm.LITTAB.get(index).address;
+    }
+
+    static String table(a1 asm) {
+        StringBuilder sb = new StringBuilder();
+        for (a1.LiteralEntry e : asm.LITTAB) sb.append(e.text).append('@').append(e.address).append(' ');
+        return sb + "POOLTAB " + asm.POOLTAB;
+    }
+
+    static void check(String name, boolean ok, String detail) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            System.out.println("  got: " + detail);
+            failures++;
+        }
+    }
+}
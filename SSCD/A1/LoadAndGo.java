@@ -0,0 +1,123 @@
+import java.util.Arrays;
+
+// Single-pass "load-and-go" assembly.
+// Machine words go straight into a memory image while Pass 1 runs, so there is no IC and no
+// second read. A reference to a symbol that is not defined yet is linked into that symbol's
+// fix-up chain; when the label is defined the chain is walked and every use is backpatched.
+//
+// The chain lives in the operand slots themselves: an unresolved slot holds the LC of the
+// previous unresolved use of the same symbol, chainHead holds the latest one (-1 ends a chain).
+// Literals work the same way with their own chains: every use comes before its LTORG / END.
+class LoadAndGo {
+    static final int EMPTY = -1;  // nothing assembled at this address (gap or DS)
+    static final int DATA = -2;   // DC word, operand holds the constant
+
+    private int[] head = new int[1024];     // machine opcode << 8 | reg, or EMPTY / DATA
+    private int[] operand = new int[1024];  // address / constant / chain link
+    private int low = Integer.MAX_VALUE, high = -1;
+
+    private final IntTable chainHead = new IntTable();  // symbol id -> LC of latest unresolved use
+    private final IntTable literalHead = new IntTable(); // literal id -> LC of latest unresolved use
+    private int unresolved = 0;
+
+    LoadAndGo() {
+        Arrays.fill(head, EMPTY);
+    }
+
+    private void ensure(int lc) {
+        if (lc < 0) throw new IllegalStateException("negative address " + lc);
+        if (lc >= head.length) {
+            int old = head.length;
+            int size = Math.max(lc + 1, old * 2);
+            head = Arrays.copyOf(head, size);
+            operand = Arrays.copyOf(operand, size);
+            Arrays.fill(head, old, size, EMPTY);
+        }
+        low = Math.min(low, lc);
+        high = Math.max(high, lc);
+    }
+
+    // Instruction with a known operand (constant, register-only, or already defined symbol)
+    void emit(int lc, int opcode, int reg, int address) {
+        ensure(lc);
+        head[lc] = head(opcode, reg);
+        operand[lc] = address;
+    }
+
+    // Instruction whose operand is a symbol that has no address yet
+    void emitForward(int lc, int opcode, int reg, int symId) {
+        link(chainHead, lc, opcode, reg, symId);
+    }
+
+    // Instruction whose operand is a literal (placed later, by LTORG / END)
+    void emitLiteral(int lc, int opcode, int reg, int litId) {
+        link(literalHead, lc, opcode, reg, litId);
+    }
+
+    private void link(IntTable heads, int lc, int opcode, int reg, int id) {
+        ensure(lc);
+        head[lc] = head(opcode, reg);
+        int prev = heads.get(id);
+        operand[lc] = (prev == IntTable.UNDEFINED) ? -1 : prev;
+        heads.put(id, lc);
+        unresolved++;
+    }
+
+    // The word's opcode is the machine opcode, as AssemblerPass2 emits it (Opcodes.NONE kept as 0xFF)
+    private static int head(int opcode, int reg) {
+        return (Opcodes.machineOpcode(opcode) & 0xFF) << 8 | reg;
+    }
+
+    void data(int lc, int value) {
+        ensure(lc);
+        head[lc] = DATA;
+        operand[lc] = value;
+    }
+
+    // Label defined: backpatch every earlier use of the symbol
+    void define(int symId, int address) {
+        backpatch(chainHead, symId, address);
+    }
+
+    // Literal placed in a pool: backpatch its uses
+    void defineLiteral(int litId, int address) {
+        backpatch(literalHead, litId, address);
+    }
+
+    private void backpatch(IntTable heads, int id, int address) {
+        int lc = heads.get(id);
+        if (lc == IntTable.UNDEFINED) return;
+        while (lc != -1) {
+            int next = operand[lc];
+            operand[lc] = address;
+            unresolved--;
+            lc = next;
+        }
+        heads.put(id, -1);
+    }
+
+    int unresolvedCount() {
+        return unresolved;
+    }
+
+    // Same listing shape as AssemblerPass2: LC<TAB>opcode(2 hex) reg(1) address(3), DC as 6 digits.
+    // Symbols that never got defined are loaded as address 000 (the caller reports them)
+    void print(ObjectCodeWriter w) {
+        for (int id = 1; id <= chainHead.maxId(); id++) define(id, 0);
+
+        w.str("LC\tMachine Code").newline();
+        w.str("----------------------------").newline();
+        for (int lc = low; lc <= high; lc++) {
+            if (head[lc] == EMPTY) continue;
+            w.dec(lc).tab();
+            if (head[lc] == DATA) w.dec(operand[lc], 6);
+            else {
+                int op = head[lc] >> 8;
+                if (op == 0xFF) w.str("null");
+                else w.hex(op, 2);
+                w.dec(head[lc] & 0xFF).dec(operand[lc], 3);
+            }
+            w.newline();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+// Memory-mapped input: the Lexer reads straight out of the MappedByteBuffer (ASCII, no decoding, no copy).
+// A single mapping is limited to 2 GB, so the file is mapped in windows; a window is remapped
+// from the start of the current line whenever a line runs past its end.
+class MappedSource implements LineSource {
+    static final long WINDOW = 1L << 28; // 256 MB per mapping
+
+    private final FileChannel ch;
+    private final long size;
+    private final long window;
+    private MappedByteBuffer map;
+    private long base = 0;  // file offset of map[0]
+    private int pos = 0;    // next unread byte within map
+    private int lim = 0;    // bytes mapped
+
+    MappedSource(String filename) throws IOException {
+        this(filename, WINDOW);
+    }
+
+    MappedSource(String filename, long window) throws IOException {
+        this.ch = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        this.size = ch.size();
+        this.window = Math.min(window, Integer.MAX_VALUE);
+        remap(0);
+    }
+
+    private void remap(long offset) throws IOException {
+        base = offset;
+        lim = (int) Math.min(window, size - offset);
+        map = ch.map(FileChannel.MapMode.READ_ONLY, offset, lim);
+        pos = 0;
+    }
+
+    public boolean next(Lexer lx) throws IOException {
+        while (true) {
+            for (int i = pos; i < lim; i++) {
+                if (map.get(i) == '\n') {
+                    lx.lex(map, pos, i);
+                    pos = i + 1;
+                    return true;
+                }
+            }
+            long lineStart = base + pos;
+            if (base + lim >= size) {
+                if (pos >= lim) return false;
+                lx.lex(map, pos, lim); // last line without a newline
+                pos = lim;
+                return true;
+            }
+            if (pos == 0) throw new IOException("line longer than the mapping window at offset " + lineStart);
+            remap(lineStart);
+        }
+    }
+
+    public void close() throws IOException {
+        ch.close();
+    }
+}
@@ -0,0 +1,397 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Parallel Pass 1 for very large sources (binary IC output, same bytes as the sequential pass).
+//
+// Every line's LC depends on all lines before it, but only through one small value per chunk:
+//   Phase 1 (parallel)  each chunk of lines is lexed on its own. LTORG / END split it into parts;
+//                       a part's summary is its LC effect ("+n", or "reset to v" when it contains
+//                       START), the literals it uses and its label definitions relative to its start.
+//   Prefix              the part summaries are folded in order, so every part knows its base LC.
+//                       The fold carries the set of literals still open: a pool placed at the end
+//                       of a part is as large as that set, and its literals get their LITTAB entries.
+//   Merge               chunk SYMTABs are merged in chunk order: symbol IDs in order of first
+//                       appearance, the last definition wins, exactly as the sequential pass does.
+//   Phase 2 (parallel)  chunks are lexed again with their base LC, the final symbol IDs and LITTAB
+//                       entries and encoded into IC records (pool DCs after their LTORG / END); the
+//                       buffers are written out in chunk order.
+//
+// START is the only LC reset in the instruction set; a part that contains one acts as a barrier
+// (its effect ignores everything before it). Afterwards asm holds SYMTAB, LITTAB, POOLTAB, fixups
+// and LC as if processPassOne had run, so the usual listing works.
+class ParallelPassOne {
+    static final long MAX_CHUNK = 64L << 20; // bytes of source per chunk (bounds IC buffered per chunk)
+
+    private final a1 asm;
+    private final int threads;
+
+    ParallelPassOne(a1 asm, int threads) {
+        this.asm = asm;
+        this.threads = threads;
+    }
+
+    // LC effect of a run of lines: lc -> (reset ? value : lc + value)
+    static class Effect {
+        final boolean reset;
+        final int value;
+
+        Effect(boolean reset, int value) {
+            this.reset = reset;
+            this.value = value;
+        }
+
+        int apply(int lc) {
+            return reset ? value : lc + value;
+        }
+    }
+
+    // Label definition inside a chunk: address relative to its part's start unless a START came first
+    static class Definition {
+        boolean absolute;
+        int part;
+        int offset;
+        int dsLength = -1; // length from the last DS definition in the chunk (-1 = none)
+    }
+
+    // Lines of a chunk up to and including an LTORG / END (the last part runs to the chunk end)
+    static class Part {
+        Effect effect;
+        final Set<Integer> literals = new LinkedHashSet<>();        // pool IDs of literal operands, first use first
+        int base;                                                   // LC at the part start (after the fold)
+        final Map<Integer, a1.LiteralEntry> pool = new HashMap<>(); // pool ID -> LITTAB entry (after the fold)
+        int placed = -1;                                            // POOLTAB index of the pool placed at its end
+    }
+
+    static class Chunk {
+        final long from, to;          // byte range in the file, whole lines
+        MappedByteBuffer map;
+        final List<Part> parts = new ArrayList<>();
+        final List<Integer> firstSeen = new ArrayList<>();              // pool IDs in order of first appearance
+        final Map<Integer, Definition> defs = new HashMap<>();          // pool ID -> last definition here
+        byte[] ic;                    // encoded records (phase 2)
+        final List<int[]> undefinedRefs = new ArrayList<>();            // {pool ID, LC} of undefined symbols
+        final Map<Integer, Integer> openRefs = new HashMap<>();         // pool ID -> uses before its label in this chunk
+        long lines;
+        long literalRefs;
+
+        Chunk(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    void run(String source, OutputStream ic) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(source), StandardOpenOption.READ);
+             Metrics.Phase phase = asm.metrics.phase("pass1")) {
+            List<Chunk> chunks = split(ch);
+            for (Chunk c : chunks) c.map = ch.map(FileChannel.MapMode.READ_ONLY, c.from, c.to - c.from);
+
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                // Phase 1: LC effect and local definitions per chunk
+                pool.submit(() -> chunks.parallelStream().forEach(this::scan)).get();
+
+                int trailingPool = layout(chunks);
+                merge(chunks);
+
+                // Phase 2: encode, written in chunk order a wave at a time
+                try (ICRecord.Writer w = new ICRecord.Writer(ic)) {
+                    int wave = Math.max(1, threads);
+                    for (int first = 0; first < chunks.size(); first += wave) {
+                        List<Chunk> part = chunks.subList(first, Math.min(chunks.size(), first + wave));
+                        pool.submit(() -> part.parallelStream().forEach(this::encode)).get();
+                        for (Chunk c : part) {
+                            w.records(c.ic, 0, c.ic.length);
+                            asm.icRecords += c.ic.length / ICRecord.SIZE;
+                            phase.lines(c.lines);
+                            c.ic = null;
+                            for (int[] ref : c.undefinedRefs) {
+                                a1.SymbolEntry e = asm.findSymbol(ref[0]);
+                                asm.fixups.computeIfAbsent(e.name, k -> new ArrayList<>()).add(ref[1]);
+                            }
+                        }
+                    }
+                    if (trailingPool != -1) { // literals after the last LTORG when END is missing
+                        for (a1.LiteralEntry e : placedPool(trailingPool)) {
+                            w.write(Opcodes.cls(Opcodes.DC), Opcodes.opcode(Opcodes.DC), 0, ICRecord.CONST, e.address, e.value);
+                            asm.icRecords++;
+                        }
+                    }
+                    asm.writeTables(w);
+                }
+                asm.metrics.add("pass1.chunks", chunks.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+                throw new IllegalStateException(cause);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        recordPassOne();
+    }
+
+    void recordPassOne() {
+        asm.recordPassOne();
+        asm.metrics.add("pass1.ic_bytes", asm.binaryICSize());
+    }
+
+    // Chunk boundaries at line starts: about threads * 4 chunks, none larger than MAX_CHUNK
+    List<Chunk> split(FileChannel ch) throws IOException {
+        long size = ch.size();
+        int n = (int) Math.max(Math.max(1, threads) * 4L, (size + MAX_CHUNK - 1) / MAX_CHUNK);
+        List<Chunk> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long from = 0;
+        for (int i = 1; i <= n && from < size; i++) {
+            long to = (i == n) ? size : Math.max(from, i * size / n);
+            // Move the cut to just after the next newline
+            while (to < size) {
+                probe.clear();
+                int read = ch.read(probe, to);
+                if (read <= 0) { to = size; break; }
+                int nl = -1;
+                for (int k = 0; k < read; k++) {
+                    if (probe.get(k) == '\n') { nl = k; break; }
+                }
+                if (nl >= 0) { to += nl + 1; break; }
+                to += read;
+            }
+            if (to > from) chunks.add(new Chunk(from, to));
+            from = to;
+        }
+        return chunks;
+    }
+
+    // Calls fn for every line of the chunk with the lexed tokens
+    interface LineHandler {
+        void line(Lexer lx);
+    }
+
+    void forEachLine(Chunk c, LineHandler fn) {
+        Lexer lx = asm.newLexer();
+        MappedByteBuffer map = c.map;
+        int lim = map.limit(), pos = 0;
+        for (int i = 0; i < lim; i++) {
+            if (map.get(i) == '\n') {
+                lx.lex(map, pos, i);
+                fn.line(lx);
+                pos = i + 1;
+            }
+        }
+        if (pos < lim) {
+            lx.lex(map, pos, lim); // last line without a newline
+            fn.line(lx);
+        }
+    }
+
+    // ================= PHASE 1 =================
+    // Same LC rules as a1.processLine, tracked relative to the chunk start
+
+    void scan(Chunk c) {
+        Set<Integer> seen = new HashSet<>();
+        boolean[] reset = {false};
+        int[] lc = {0};
+        Part[] part = {new Part()};
+        forEachLine(c, lx -> {
+            c.lines++;
+            if (lx.count == 0) return;
+            int ptr = 0;
+            Definition def = null;
+            if (lx.kind[0] == Lexer.LABEL) {
+                int id = lx.id[0];
+                if (seen.add(id)) c.firstSeen.add(id);
+                def = c.defs.computeIfAbsent(id, k -> new Definition());
+                def.absolute = reset[0];
+                def.part = c.parts.size();
+                def.offset = lc[0];
+                ptr++;
+            }
+            int mnemonic = (ptr < lx.count) ? ptr++ : -1;
+            int op1 = (ptr < lx.count) ? ptr++ : -1;
+            int op2 = (ptr < lx.count) ? ptr++ : -1;
+            if (op2 != -1 && lx.kind[op2] == Lexer.LITERAL) {
+                part[0].literals.add(lx.id[op2]);
+                c.literalRefs++;
+            }
+            if (op2 != -1 && a1.isSymbolOperand(lx.kind[op2])) {
+                int id = lx.id[op2];
+                if (seen.add(id)) c.firstSeen.add(id);
+                if (!c.defs.containsKey(id)) c.openRefs.merge(id, 1, Integer::sum);
+            }
+
+            int op = (mnemonic != -1 && lx.kind[mnemonic] == Lexer.MNEMONIC) ? lx.keyword[mnemonic] : Opcodes.NONE;
+            if (op == Opcodes.START) {
+                reset[0] = true;
+                lc[0] = lx.parseInt(op1);
+            } else if (op == Opcodes.DS) {
+                int size = lx.parseInt(op1);
+                lc[0] += size;
+                if (def != null) def.dsLength = size;
+            } else if (op != Opcodes.NONE) {
+                lc[0] += Opcodes.length(op);
+            } else {
+                lc[0] += 1;
+            }
+            if (op == Opcodes.LTORG || op == Opcodes.END) {
+                // The open pool goes here; its size is only known once earlier chunks are folded in
+                part[0].effect = new Effect(reset[0], lc[0]);
+                c.parts.add(part[0]);
+                part[0] = new Part();
+                reset[0] = false;
+                lc[0] = 0;
+            }
+        });
+        part[0].effect = new Effect(reset[0], lc[0]);
+        c.parts.add(part[0]);
+    }
+
+    // ================= PREFIX =================
+
+    // Base LC of every part in file order (a1 starts at LC 0), folding in the open literals: each
+    // literal gets a LITTAB entry the first time it is used in a pool, and the pool is placed after
+    // the part that ends with LTORG / END. Sequential, but only over the few parts per chunk.
+    // Returns the POOLTAB index of the literals still open at the end of the file (-1 = none).
+    int layout(List<Chunk> chunks) {
+        Map<Integer, a1.LiteralEntry> open = new HashMap<>();
+        int lc = 0;
+        for (Chunk c : chunks) {
+            asm.literalRefs += c.literalRefs;
+            for (int i = 0; i < c.parts.size(); i++) {
+                Part p = c.parts.get(i);
+                p.base = lc;
+                for (int id : p.literals) {
+                    a1.LiteralEntry e = open.get(id);
+                    if (e == null) {
+                        e = new a1.LiteralEntry(asm.LITTAB.size() + 1, asm.pool.name(id), asm.POOLTAB.size());
+                        asm.LITTAB.add(e);
+                        open.put(id, e);
+                    }
+                    p.pool.put(id, e);
+                }
+                asm.LC = p.effect.apply(lc);
+                if (i < c.parts.size() - 1) p.placed = place(open);
+                lc = asm.LC;
+            }
+        }
+        asm.LC = lc;
+        return place(open);
+    }
+
+    // The open pool at asm.LC, as a1.assignPool; returns its POOLTAB index (-1 when empty)
+    int place(Map<Integer, a1.LiteralEntry> open) {
+        if (open.isEmpty()) return -1;
+        asm.assignPool();
+        open.clear();
+        return asm.POOLTAB.size() - 1;
+    }
+
+    List<a1.LiteralEntry> placedPool(int index) {
+        int from = asm.POOLTAB.get(index);
+        int to = (index + 1 < asm.POOLTAB.size()) ? asm.POOLTAB.get(index + 1) : asm.LITTAB.size();
+        return asm.LITTAB.subList(from, to);
+    }
+
+    // ================= MERGE =================
+
+    // asm's SYMTAB is only read during phase 2
+    void merge(List<Chunk> chunks) {
+        for (Chunk c : chunks) {
+            for (int poolId : c.firstSeen) {
+                if (asm.findSymbol(poolId) == null) asm.addSymbol(poolId, asm.pool.name(poolId), -1);
+            }
+            // Uses before the label in this chunk are forward references unless an earlier chunk defined it
+            for (Map.Entry<Integer, Integer> r : c.openRefs.entrySet()) {
+                if (asm.findSymbol(r.getKey()).address == -1) asm.forwardRefs += r.getValue();
+            }
+            for (Map.Entry<Integer, Definition> d : c.defs.entrySet()) {
+                a1.SymbolEntry e = asm.findSymbol(d.getKey());
+                Definition def = d.getValue();
+                e.address = def.absolute ? def.offset : c.parts.get(def.part).base + def.offset;
+                if (def.dsLength != -1) e.length = def.dsLength;
+            }
+        }
+    }
+
+    // ================= PHASE 2 =================
+    // Records as a1.generateBinaryIC writes them, big-endian like DataOutputStream
+
+    void encode(Chunk c) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, (c.to - c.from) / 2 + 64));
+        ByteBuffer rec = ByteBuffer.allocate(ICRecord.SIZE);
+        int[] lc = {c.parts.get(0).base};
+        int[] part = {0};
+        forEachLine(c, lx -> {
+            if (lx.count == 0) return;
+            int ptr = (lx.kind[0] == Lexer.LABEL) ? 1 : 0;
+            int mnemonic = (ptr < lx.count) ? ptr++ : -1;
+            int op1 = (ptr < lx.count) ? ptr++ : -1;
+            int op2 = (ptr < lx.count) ? ptr++ : -1;
+
+            a1.SymbolEntry sym = null;
+            if (op2 != -1 && a1.isSymbolOperand(lx.kind[op2])) {
+                sym = asm.findSymbol(lx.id[op2]);
+                if (sym.address == -1) c.undefinedRefs.add(new int[] {lx.id[op2], lc[0]});
+            }
+
+            int op = (mnemonic != -1 && lx.kind[mnemonic] == Lexer.MNEMONIC) ? lx.keyword[mnemonic] : Opcodes.NONE;
+            int recordLC = lc[0];
+            if (op == Opcodes.START) {
+                lc[0] = lx.parseInt(op1);
+                recordLC = ICRecord.NO_LC;
+                op2 = -1;
+                sym = null;
+            } else if (op == Opcodes.DS) {
+                lc[0] += lx.parseInt(op1);
+            } else if (op != Opcodes.NONE) {
+                lc[0] += Opcodes.length(op);
+            } else {
+                lc[0] += 1;
+            }
+            if (op == Opcodes.NONE) return; // nothing to encode
+
+            int reg = (op1 != -1 && lx.kind[op1] == Lexer.REGISTER) ? lx.keyword[op1] : 0;
+            int kind = ICRecord.NONE, value = 0;
+            if (sym != null) {
+                kind = ICRecord.SYMBOL;
+                value = sym.id;
+            } else if (op2 != -1 && lx.kind[op2] == Lexer.LITERAL) {
+                kind = ICRecord.LITERAL;
+                value = c.parts.get(part[0]).pool.get(lx.id[op2]).id;
+            } else if (op2 != -1 && lx.kind[op2] == Lexer.CONSTANT) {
+                kind = ICRecord.CONST;
+                value = lx.parseInt(op2);
+            } else if (op1 != -1 && lx.kind[op1] == Lexer.CONSTANT) {
+                kind = ICRecord.CONST;
+                value = lx.parseInt(op1);
+            }
+            rec.clear();
+            rec.put((byte) Opcodes.cls(op)).put((byte) Opcodes.opcode(op)).put((byte) reg).put((byte) kind)
+               .putInt(recordLC).putInt(value);
+            bytes.write(rec.array(), 0, ICRecord.SIZE);
+
+            if (op == Opcodes.LTORG || op == Opcodes.END) {
+                // Pool entries as a1.generateLiteralIC writes them, then the next part
+                Part p = c.parts.get(part[0]++);
+                if (p.placed != -1) {
+                    for (a1.LiteralEntry e : placedPool(p.placed)) {
+                        rec.clear();
+                        rec.put((byte) Opcodes.cls(Opcodes.DC)).put((byte) Opcodes.opcode(Opcodes.DC)).put((byte) 0)
+                           .put(ICRecord.CONST).putInt(e.address).putInt(e.value);
+                        bytes.write(rec.array(), 0, ICRecord.SIZE);
+                    }
+                }
+                lc[0] = c.parts.get(part[0]).base;
+            }
+        });
+        c.ic = bytes.toByteArray();
+    }
+}
@@ -0,0 +1,56 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+
+// Reads ASCII source through a reusable byte buffer (no per-line String, no charset decoding).
+class StreamSource implements LineSource {
+    private final InputStream in;
+    private byte[] buf = new byte[1 << 16];
+    private ByteBuffer view = ByteBuffer.wrap(buf);
+    private int pos = 0, lim = 0;
+    private boolean eof = false;
+
+    StreamSource(InputStream in) {
+        this.in = in;
+    }
+
+    public boolean next(Lexer lx) throws IOException {
+        while (true) {
+            for (int i = pos; i < lim; i++) {
+                if (buf[i] == '\n') {
+                    lx.lex(view, pos, i);
+                    pos = i + 1;
+                    return true;
+                }
+            }
+            if (eof) {
+                if (pos >= lim) return false;
+                lx.lex(view, pos, lim); // last line without a newline
+                pos = lim;
+                return true;
+            }
+            fill();
+        }
+    }
+
+    // Move the partial line to the front (growing the buffer for very long lines) and read more
+    private void fill() throws IOException {
+        int rest = lim - pos;
+        if (rest == buf.length) {
+            byte[] bigger = new byte[buf.length * 2];
+            System.arraycopy(buf, pos, bigger, 0, rest);
+            buf = bigger;
+            view = ByteBuffer.wrap(buf);
+        } else {
+            System.arraycopy(buf, pos, buf, 0, rest);
+        }
+        pos = 0;
+        lim = rest;
+        int n = in.read(buf, lim, buf.length - lim);
+        if (n < 0) eof = true;
+        else lim += n;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -2,11 +2,39 @@ import java.io.*;
 import java.util.*;
 
 public class a1 {
-    static int LC = 0;
+    int LC = 0;
     static Map<String, String> OPTAB = new HashMap<>();
     static Map<String, String> REGTAB = new HashMap<>();
-    static Map<String, SymbolEntry> SYMTAB = new LinkedHashMap<>();
-    static List<String> intermediateCode = new ArrayList<>();
+    Map<String, SymbolEntry> SYMTAB = new LinkedHashMap<>();
+    List<String> intermediateCode = new ArrayList<>();
+
+    // All listing output is batched through one writer (see common/ObjectCodeWriter)
+    ObjectCodeWriter out = ObjectCodeWriter.stdout();
+    // Streaming mode: IC records go straight to this sink instead of intermediateCode
+    ObjectCodeWriter icSink = null;
+    // Fix-up list: forward-referenced symbols still waiting for their label -> LCs that used them
+    Map<String, List<Integer>> fixups = new HashMap<>();
+    // Read the source through a memory mapping instead of a byte stream
+    boolean mapInput = false;
+    // Binary IC mode: fixed-width records (see common/ICRecord) instead of text
+    ICRecord.Writer icBinary = null;
+    // Pipelined builds: binary IC carries a DEF record whenever a label gets its address
+    boolean inlineDefinitions = false;
+    // Binary IC mode with more than one thread: Pass 1 over chunks in parallel (see ParallelPassOne)
+    int threads = 1;
+    // Load-and-go mode: machine code goes straight into a memory image, no IC at all
+    LoadAndGo image = null;
+    // Phase timers and counters (see common/Metrics); written to metricsFile with --metrics
+    Metrics metrics = new Metrics();
+    String metricsFile = null;
+    long forwardRefs = 0;   // operands naming a symbol not defined yet
+    long icRecords = 0;     // IS/DL/AD records, DEF records excluded
+    long defRecords = 0;    // DEF records (inlineDefinitions)
+    // LITTAB: literals (='5') in order of first use, one entry per literal per pool;
+    // POOLTAB: LITTAB index of the first literal of each pool placed by LTORG / END
+    List<LiteralEntry> LITTAB = new ArrayList<>();
+    List<Integer> POOLTAB = new ArrayList<>();
+    long literalRefs = 0;
 
     // Helper class for SYMTAB format
     static class SymbolEntry {
@@ -17,117 +45,609 @@ public class a1 {
         }
     }
 
+    // Helper class for LITTAB format
+    static class LiteralEntry {
+        int id, address = -1, value;
+        int pool;      // POOLTAB index the literal will be placed in
+        String text;
+        LiteralEntry(int id, String text, int pool) {
+            this.id = id; this.text = text; this.pool = pool;
+            this.value = literalValue(text);
+        }
+    }
+
     public static void main(String[] args) {
         setupTables();
-        processPassOne("input.asm");
-        displayOutput();
+        a1 asm = new a1();
+        asm.run(args);
+        if (asm.metricsFile != null) asm.metrics.write(asm.metricsFile);
     }
 
-    static void setupTables() {
-        // Opcode Table
-        OPTAB.put("STOP", "IS,00");  OPTAB.put("ADD", "IS,01");
-        OPTAB.put("SUB", "IS,02");   OPTAB.put("MULT", "IS,03");
-        OPTAB.put("MOVER", "IS,04"); OPTAB.put("MOVEM", "IS,05");
-        OPTAB.put("START", "AD,01"); OPTAB.put("END", "AD,02");
-        OPTAB.put("DC", "DL,01");    OPTAB.put("DS", "DL,02");
-
-        // Register Table
-        REGTAB.put("AREG", "1"); REGTAB.put("BREG", "2");
-        REGTAB.put("CREG", "3"); REGTAB.put("DREG", "4");
-    }
-
-    static void processPassOne(String filename) {
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String line;
-            int symId = 1;
-            while ((line = br.readLine()) != null) {
-                String[] tokens = line.trim().split("\\s+");
-                if (tokens.length == 0 || tokens[0].isEmpty()) continue;
-
-                int ptr = 0;
-                String label = null;
-
-                // Label Detection
-                if (!OPTAB.containsKey(tokens[0])) {
-                    label = tokens[0];
-                    if (!SYMTAB.containsKey(label)) {
-                        SYMTAB.put(label, new SymbolEntry(symId++, label, LC, 1));
-                    } else {
-                        SYMTAB.get(label).address = LC;
-                    }
-                    ptr++;
-                }
+    // Each a1 instance is one translation unit with its own LC, SYMTAB and IC
+    void run(String[] args) {
+        // Usage: java a1 [source.asm] [--mmap] [--metrics m.json|m.csv]
+        //                [--stream [ic.txt] | --binary ic.icb [--parallel [N]] | --go | --incremental state [obj.txt]]
+        String source = "input.asm";
+        boolean stream = false;
+        String stateFile = null, objFile = null;
+        String icFile = null;
+        String binFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--stream")) {
+                stream = true;
+                if (i + 1 < args.length && !args[i + 1].startsWith("--")) icFile = args[++i];
+            } else if (args[i].equals("--binary") && i + 1 < args.length) {
+                binFile = args[++i];
+            } else if (args[i].equals("--incremental") && i + 1 < args.length) {
+                stateFile = args[++i];
+                if (i + 1 < args.length && !args[i + 1].startsWith("--")) objFile = args[++i];
+            } else if (args[i].equals("--parallel")) {
+                threads = Runtime.getRuntime().availableProcessors();
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--go")) {
+                image = new LoadAndGo();
+            } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                metricsFile = args[++i];
+            } else if (args[i].equals("--mmap")) {
+                mapInput = true;
+            } else {
+                source = args[i];
+            }
+        }
 
-                String mnemonic = (ptr < tokens.length) ? tokens[ptr++] : "";
-                String op1 = (ptr < tokens.length) ? tokens[ptr++] : "";
-                String op2 = (ptr < tokens.length) ? tokens[ptr++] : "";
+        if (binFile != null) {
+            writeBinaryIC(source, binFile);
+            return;
+        }
+        if (image != null) {
+            loadAndGo(source);
+            return;
+        }
+        if (stateFile != null) {
+            incremental(source, stateFile, objFile);
+            return;
+        }
+        if (!stream) {
+            processPassOne(source);
+            displayOutput();
+            return;
+        }
 
-                // Forward Reference Handling - add undefined symbols to SYMTAB
-                if (!op2.isEmpty() && !op2.equals("-") && !REGTAB.containsKey(op2) && !op2.matches("\\d+")) {
-                    if (!SYMTAB.containsKey(op2)) {
-                        SYMTAB.put(op2, new SymbolEntry(symId++, op2, -1, 1)); // -1 = undefined
-                    }
+        out.str("=== PASS 1 OUTPUT (STREAMING) ===").newline().newline();
+        try {
+            if (icFile == null) {
+                icSink = out;
+                out.str("--- INTERMEDIATE CODE ---").newline();
+                printICHeader();
+                processPassOne(source);
+            } else {
+                out.str("Intermediate code written to ").str(icFile).newline();
+                try (ObjectCodeWriter file = ObjectCodeWriter.file(icFile)) {
+                    icSink = file;
+                    processPassOne(source);
                 }
+            }
+        } catch (IOException e) { e.printStackTrace(); }
+        displaySymbols();
+        out.flush();
+    }
+
+    void writeBinaryIC(String source, String binFile) {
+        if (threads > 1) {
+            try {
+                new ParallelPassOne(this, threads).run(source, new FileOutputStream(binFile));
+            } catch (IOException e) { e.printStackTrace(); }
+        } else {
+            try (LineSource src = openSource(source)) {
+                writeBinaryIC(src, new FileOutputStream(binFile));
+            } catch (IOException e) { e.printStackTrace(); }
+        }
+        out.str("=== PASS 1 OUTPUT (BINARY) ===").newline().newline();
+        out.str("Intermediate code written to ").str(binFile).newline();
+        displaySymbols();
+        out.flush();
+    }
 
-                // Address Management
-                if (mnemonic.equals("START")) {
-                    LC = Integer.parseInt(op1);
-                    generateIC(null, mnemonic, op1, "");
-                } else {
-                    generateIC(LC, mnemonic, op1, op2);
-                    if (mnemonic.equals("DS")) {
-                        LC += Integer.parseInt(op1);
-                        if (label != null) SYMTAB.get(label).length = Integer.parseInt(op1);
-                    } else {
-                        LC += 1;
-                    }
+    // Pass 1 over any line source; binary IC and the symbol section go to ic (closed when done)
+    void writeBinaryIC(LineSource src, OutputStream ic) throws IOException {
+        try (Metrics.Phase phase = metrics.phase("pass1")) {
+            phase.lines(binaryPassOne(src, ic));
+        }
+        recordPassOne();
+        metrics.add("pass1.ic_bytes", binaryICSize());
+    }
+
+    // The binary Pass 1 itself; returns the lines read
+    long binaryPassOne(LineSource src, OutputStream ic) throws IOException {
+        try (ICRecord.Writer w = new ICRecord.Writer(ic)) {
+            icBinary = w;
+            Lexer lx = newLexer();
+            long lines = 0;
+            while (src.next(lx)) {
+                processLine(lx);
+                lines++;
+            }
+            placePool(); // literals after the last LTORG when END is missing
+            writeTables(w);
+            return lines;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Symbol and literal sections that follow the binary IC
+    void writeTables(ICRecord.Writer w) throws IOException {
+        w.beginSymbols(SYMTAB.size());
+        for (SymbolEntry e : SYMTAB.values()) w.symbol(e.id, e.address, e.length, e.name);
+        w.beginLiterals(LITTAB.size());
+        for (LiteralEntry e : LITTAB) w.literal(e.id, e.address);
+    }
+
+    void loadAndGo(String source) {
+        processPassOne(source);
+        out.str("=== SINGLE PASS (LOAD-AND-GO) ===").newline().newline();
+        image.print(out);
+        displaySymbols();
+        out.flush();
+    }
+
+    // Incremental mode: only blocks that changed since the last run (saved in stateFile) are lexed
+    void incremental(String source, String stateFile, String objFile) {
+        IncrementalAssembler inc = new IncrementalAssembler(this);
+        out.str("=== PASS 1 + 2 (INCREMENTAL) ===").newline().newline();
+        try (Metrics.Phase phase = metrics.phase("incremental")) {
+            if (objFile == null) {
+                inc.run(source, stateFile, out);
+            } else {
+                try (ObjectCodeWriter file = ObjectCodeWriter.file(objFile)) {
+                    inc.run(source, stateFile, file);
                 }
+                out.str("Object code written to ").str(objFile).newline();
             }
+            phase.lines(inc.lines);
+        } catch (IOException e) { e.printStackTrace(); }
+        out.newline().str("Blocks: ").dec(inc.blocks()).str(" (reused ").dec(inc.reused).str(", shifted ").dec(inc.shifted)
+           .str(", re-lexed ").dec(inc.relexed).str("), object code re-emitted for ").dec(inc.emitted)
+           .str(" (").dec(inc.emittedStatements).str(" statements)").newline();
+        metrics.add("incremental.blocks_reused", inc.reused);
+        metrics.add("incremental.blocks_shifted", inc.shifted);
+        metrics.add("incremental.blocks_relexed", inc.relexed);
+        metrics.add("incremental.blocks_emitted", inc.emitted);
+        metrics.add("incremental.object_lines", inc.emittedStatements);
+        displaySymbols();
+        out.flush();
+    }
+
+    // OPTAB / REGTAB are generated from common/isa.def (see common/Opcodes); the maps here
+    // only hold the printable "IS,01" form for the table listing
+    static void setupTables() {
+        for (int i = 0; i < Opcodes.MNEMONICS.length; i++) {
+            OPTAB.put(Opcodes.MNEMONICS[i], opValue(Opcodes.PACKED[i]));
+        }
+        for (int i = 0; i < Opcodes.REGISTERS.length; i++) {
+            REGTAB.put(Opcodes.REGISTERS[i], String.valueOf(Opcodes.REGISTER_CODES[i]));
+        }
+    }
+
+    static String opValue(int packed) {
+        StringBuilder sb = new StringBuilder(8);
+        appendOpValue(sb, packed);
+        return sb.toString();
+    }
+
+    // "IS,01" from the packed entry
+    static void appendOpValue(StringBuilder sb, int packed) {
+        int opcode = Opcodes.opcode(packed);
+        sb.append(ICRecord.className((byte) Opcodes.cls(packed))).append(',');
+        if (opcode < 10) sb.append('0');
+        sb.append(opcode);
+    }
+
+    LineSource openSource(String filename) throws IOException {
+        return mapInput ? new MappedSource(filename) : new StreamSource(new FileInputStream(filename));
+    }
+
+    void processPassOne(String filename) {
+        try (LineSource src = openSource(filename)) {
+            processPassOne(src);
         } catch (Exception e) { e.printStackTrace(); }
     }
 
-    static void generateIC(Integer currentLC, String mnemonic, String op1, String op2) {
-        String lc = (currentLC == null) ? "---" : String.valueOf(currentLC);
-        String opcode = "(" + OPTAB.get(mnemonic) + ")";
-        
+    void processPassOne(LineSource src) throws IOException {
+        try (Metrics.Phase phase = metrics.phase("pass1")) {
+            Lexer lx = newLexer();
+            long lines = 0;
+            while (src.next(lx)) {
+                processLine(lx);
+                lines++;
+            }
+            placePool(); // literals after the last LTORG when END is missing
+            phase.lines(lines);
+        }
+        recordPassOne();
+        if (icSink != null) metrics.add("pass1.ic_bytes", icSink.bytesWritten());
+    }
+
+    // Header, records, END_OF_IC, the symbol and the literal section
+    long binaryICSize() {
+        long names = 0;
+        for (SymbolEntry e : SYMTAB.values()) names += e.name.length();
+        return 4 + (icRecords + defRecords + 1) * ICRecord.SIZE + 4 + SYMTAB.size() * 14L + names + 4 + LITTAB.size() * 8L;
+    }
+
+    // Table sizes and counts once Pass 1 is done
+    void recordPassOne() {
+        metrics.add("pass1.symtab_size", SYMTAB.size());
+        metrics.add("pass1.forward_refs", forwardRefs);
+        metrics.add("pass1.undefined_symbols", fixups.size());
+        metrics.add("pass1.ic_records", icRecords);
+        metrics.add("pass1.literals", LITTAB.size());
+        metrics.add("pass1.literal_refs", literalRefs);
+        metrics.add("pass1.pools", POOLTAB.size());
+    }
+
+    int symId = 1;
+
+    // Identifiers of this unit; a long-running server gives every request its own pool
+    SymbolPool pool = SymbolPool.SHARED;
+
+    Lexer newLexer() {
+        return new Lexer(pool);
+    }
+
+    // SYMTAB indexed by SymbolPool ID (the map above keeps insertion order for display)
+    SymbolEntry[] symtabById = new SymbolEntry[256];
+
+    SymbolEntry findSymbol(int poolId) {
+        return (poolId < symtabById.length) ? symtabById[poolId] : null;
+    }
+
+    SymbolEntry addSymbol(int poolId, String name, int address) {
+        SymbolEntry e = new SymbolEntry(symId++, name, address, 1);
+        if (poolId >= symtabById.length) symtabById = Arrays.copyOf(symtabById, Math.max(poolId + 1, symtabById.length * 2));
+        symtabById[poolId] = e;
+        SYMTAB.put(name, e);
+        return e;
+    }
+
+    // Literals of the open pool, indexed by the SymbolPool ID of their text: the lexer has already
+    // hashed the text, so a repeated literal costs one array read instead of a scan of the pool.
+    // Entries of pools already placed are told apart by their pool number, so nothing is cleared.
+    LiteralEntry[] literalById = new LiteralEntry[64];
+    int poolStart = 0; // LITTAB index of the open pool's first literal
+
+    LiteralEntry useLiteral(int poolId, String text) {
+        literalRefs++;
+        LiteralEntry e = (poolId < literalById.length) ? literalById[poolId] : null;
+        if (e != null && e.pool == POOLTAB.size()) return e; // already in this pool
+        e = new LiteralEntry(LITTAB.size() + 1, text, POOLTAB.size());
+        if (poolId >= literalById.length) literalById = Arrays.copyOf(literalById, Math.max(poolId + 1, literalById.length * 2));
+        literalById[poolId] = e;
+        LITTAB.add(e);
+        return e;
+    }
+
+    // LTORG / END: the open pool's literals get consecutive words from LC, each one a DC of its value
+    void placePool() {
+        int first = poolStart;
+        assignPool();
+        for (int i = first; i < LITTAB.size(); i++) generateLiteralIC(LITTAB.get(i));
+    }
+
+    // Addresses only (also used by IncrementalAssembler); closes the open pool
+    void assignPool() {
+        if (poolStart == LITTAB.size()) return;
+        POOLTAB.add(poolStart);
+        for (int i = poolStart; i < LITTAB.size(); i++) LITTAB.get(i).address = LC++;
+        poolStart = LITTAB.size();
+    }
+
+    // ='5' or =5 -> 5
+    static int literalValue(String text) {
+        int from = 1, to = text.length();
+        if (to - from >= 2 && text.charAt(from) == '\'' && text.charAt(to - 1) == '\'') {
+            from++;
+            to--;
+        }
+        if (from == to) throw new IllegalArgumentException("invalid literal " + text);
+        int v = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') throw new IllegalArgumentException("invalid literal " + text);
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    void processLine(Lexer lx) {
+        if (lx.count == 0) return;
+
+        int ptr = 0;
+        SymbolEntry label = null;
+
+        // Label Detection
+        if (lx.kind[0] == Lexer.LABEL) {
+            label = findSymbol(lx.id[0]);
+            if (label == null) {
+                label = addSymbol(lx.id[0], lx.name(0), LC);
+            } else {
+                label.address = LC;
+                fixups.remove(label.name); // label now defined, its forward references are resolved
+                if (image != null) image.define(label.id, LC);
+            }
+            if (inlineDefinitions && icBinary != null) {
+                try {
+                    icBinary.write(ICRecord.DEF, 0, 0, ICRecord.NONE, LC, label.id);
+                } catch (IOException e) { throw new UncheckedIOException(e); }
+                defRecords++;
+            }
+            ptr++;
+        }
+
+        // Token indexes (-1 = missing)
+        int mnemonic = (ptr < lx.count) ? ptr++ : -1;
+        int op1 = (ptr < lx.count) ? ptr++ : -1;
+        int op2 = (ptr < lx.count) ? ptr++ : -1;
+
+        // Forward Reference Handling - add undefined symbols to SYMTAB
+        SymbolEntry sym = null;
+        if (op2 != -1 && isSymbolOperand(lx.kind[op2])) {
+            sym = findSymbol(lx.id[op2]);
+            if (sym == null) {
+                sym = addSymbol(lx.id[op2], lx.name(op2), -1); // -1 = undefined
+            }
+            if (sym.address == -1) {
+                fixups.computeIfAbsent(sym.name, k -> new ArrayList<>()).add(LC);
+                forwardRefs++;
+            }
+        }
+
+        // Literal operand (='5'): entry in the open pool, placed at the next LTORG / END
+        LiteralEntry lit = null;
+        if (op2 != -1 && lx.kind[op2] == Lexer.LITERAL) {
+            lit = useLiteral(lx.id[op2], lx.name(op2));
+        }
+
+        // Address Management
+        int op = (mnemonic != -1 && lx.kind[mnemonic] == Lexer.MNEMONIC) ? lx.keyword[mnemonic] : Opcodes.NONE;
+        if (op == Opcodes.START) {
+            LC = lx.parseInt(op1);
+            generateIC(-1, lx, mnemonic, op1, -1, null, null);
+        } else {
+            generateIC(LC, lx, mnemonic, op1, op2, sym, lit);
+            if (op == Opcodes.DS) {
+                int size = lx.parseInt(op1);
+                LC += size;
+                if (label != null) label.length = size;
+            } else if (op != Opcodes.NONE) {
+                LC += Opcodes.length(op);
+            } else {
+                LC += 1;
+            }
+            if (op == Opcodes.LTORG || op == Opcodes.END) placePool();
+        }
+    }
+
+    static boolean isSymbolOperand(int kind) {
+        return kind != Lexer.DASH && kind != Lexer.REGISTER && kind != Lexer.CONSTANT && kind != Lexer.LITERAL;
+    }
+
+    // Reused for every record: IC text is built in place instead of via String.format
+    final StringBuilder icLine = new StringBuilder(64);
+
+    // currentLC = -1 prints "---"; sym / lit is op2's SYMTAB / LITTAB entry when it is a symbol / literal
+    void generateIC(int currentLC, Lexer lx, int mnemonic, int op1, int op2, SymbolEntry sym, LiteralEntry lit) {
+        if (icBinary != null) {
+            generateBinaryIC(currentLC, lx, mnemonic, op1, op2, sym, lit);
+            return;
+        }
+        if (image != null) {
+            generateMachineCode(currentLC, lx, mnemonic, op1, op2, sym, lit);
+            return;
+        }
+        StringBuilder sb = icLine;
+        sb.setLength(0);
+
+        if (currentLC == -1) sb.append("---");
+        else sb.append(currentLC);
+        pad(sb, 0, 5);
+
+        int col = sb.append(" | ").length();
+        if (mnemonic != -1 && lx.kind[mnemonic] == Lexer.MNEMONIC) { sb.append('('); appendOpValue(sb, lx.keyword[mnemonic]); sb.append(')'); }
+        else sb.append("(null)");
+        pad(sb, col, 8);
+
         // Operand 1 (Register or Constant)
-        String operand1;
-        if (REGTAB.containsKey(op1)) operand1 = REGTAB.get(op1);
-        else if (op1.equals("-")) operand1 = "-";
-        else if (!op1.isEmpty()) operand1 = "(C," + op1 + ")";
-        else operand1 = "";
+        col = sb.append(" | ").length();
+        if (op1 != -1) {
+            if (lx.kind[op1] == Lexer.REGISTER) sb.append(lx.keyword[op1]);
+            else if (lx.kind[op1] == Lexer.DASH) sb.append('-');
+            else { sb.append("(C,"); lx.appendTo(op1, sb); sb.append(')'); }
+        }
+        pad(sb, col, 8);
 
         // Operand 2 (Symbol or Constant)
-        String operand2;
-        if (op2.equals("-")) {
-            operand2 = "-";
-        } else if (!op2.isEmpty()) {
-            if (SYMTAB.containsKey(op2)) operand2 = "(S," + SYMTAB.get(op2).id + ")";
-            else operand2 = "(C," + op2 + ")";
+        col = sb.append(" | ").length();
+        if (op2 != -1) {
+            if (lx.kind[op2] == Lexer.DASH) sb.append('-');
+            else if (sym != null) sb.append("(S,").append(sym.id).append(')');
+            else if (lit != null) sb.append("(L,").append(lit.id).append(')');
+            else { sb.append("(C,"); lx.appendTo(op2, sb); sb.append(')'); }
+        }
+        pad(sb, col, 8);
+        addIC(sb);
+    }
+
+    void addIC(StringBuilder sb) {
+        if (icSink != null) {
+            icSink.str(sb).newline();
+        } else {
+            intermediateCode.add(sb.toString());
+        }
+        icRecords++;
+    }
+
+    // Pool entry: a DC word with the literal's value at the literal's address
+    void generateLiteralIC(LiteralEntry e) {
+        if (icBinary != null) {
+            try {
+                if (inlineDefinitions) {
+                    icBinary.write(ICRecord.DEF, 0, 0, ICRecord.LITERAL, e.address, e.id);
+                    defRecords++;
+                }
+                icBinary.write(Opcodes.cls(Opcodes.DC), Opcodes.opcode(Opcodes.DC), 0, ICRecord.CONST, e.address, e.value);
+            } catch (IOException x) { throw new UncheckedIOException(x); }
+            icRecords++;
+            return;
+        }
+        if (image != null) {
+            image.data(e.address, e.value);
+            image.defineLiteral(e.id, e.address);
+            return;
+        }
+        StringBuilder sb = icLine;
+        sb.setLength(0);
+        sb.append(e.address);
+        pad(sb, 0, 5);
+        int col = sb.append(" | ").length();
+        sb.append('(');
+        appendOpValue(sb, Opcodes.DC);
+        sb.append(')');
+        pad(sb, col, 8);
+        col = sb.append(" | ").length();
+        sb.append("(C,").append(e.value).append(')');
+        pad(sb, col, 8);
+        col = sb.append(" | ").length();
+        sb.append("(L,").append(e.id).append(')');
+        pad(sb, col, 8);
+        addIC(sb);
+    }
+
+    // One record per statement: register goes in reg, the remaining operand (symbol id or constant) in kind/value
+    void generateBinaryIC(int currentLC, Lexer lx, int mnemonic, int op1, int op2, SymbolEntry sym, LiteralEntry lit) {
+        if (mnemonic == -1 || lx.kind[mnemonic] != Lexer.MNEMONIC) return; // nothing to encode
+        int op = lx.keyword[mnemonic];
+
+        int reg = (op1 != -1 && lx.kind[op1] == Lexer.REGISTER) ? lx.keyword[op1] : 0;
+        int kind = ICRecord.NONE, value = 0;
+        if (sym != null) {
+            kind = ICRecord.SYMBOL;
+            value = sym.id;
+        } else if (lit != null) {
+            kind = ICRecord.LITERAL;
+            value = lit.id;
+        } else if (op2 != -1 && lx.kind[op2] == Lexer.CONSTANT) {
+            kind = ICRecord.CONST;
+            value = lx.parseInt(op2);
+        } else if (op1 != -1 && lx.kind[op1] == Lexer.CONSTANT) {
+            kind = ICRecord.CONST; // START / DS / DC
+            value = lx.parseInt(op1);
+        }
+
+        try {
+            icBinary.write(Opcodes.cls(op), Opcodes.opcode(op), reg, kind, currentLC == -1 ? ICRecord.NO_LC : currentLC, value);
+        } catch (IOException e) { throw new UncheckedIOException(e); }
+        icRecords++;
+    }
+
+    // Load-and-go: IS -> opcode/reg/address word, DC -> data word, DS/AD -> nothing to load
+    void generateMachineCode(int currentLC, Lexer lx, int mnemonic, int op1, int op2, SymbolEntry sym, LiteralEntry lit) {
+        if (mnemonic == -1 || lx.kind[mnemonic] != Lexer.MNEMONIC) return;
+        int op = lx.keyword[mnemonic];
+        int opcode = Opcodes.opcode(op);
+
+        if (Opcodes.cls(op) == ICRecord.DL) {
+            if (op == Opcodes.DC && op1 != -1 && lx.kind[op1] == Lexer.CONSTANT) image.data(currentLC, lx.parseInt(op1)); // DC
+            return;
+        }
+        if (Opcodes.cls(op) != ICRecord.IS) return;
+
+        int reg = (op1 != -1 && lx.kind[op1] == Lexer.REGISTER) ? lx.keyword[op1] : 0;
+        if (sym != null) {
+            if (sym.address == -1) image.emitForward(currentLC, opcode, reg, sym.id);
+            else image.emit(currentLC, opcode, reg, sym.address);
+        } else if (lit != null) {
+            image.emitLiteral(currentLC, opcode, reg, lit.id); // pools come after their uses
+        } else if (op2 != -1 && lx.kind[op2] == Lexer.CONSTANT) {
+            image.emit(currentLC, opcode, reg, lx.parseInt(op2));
         } else {
-            operand2 = "";
+            image.emit(currentLC, opcode, reg, 0);
+        }
+    }
+
+    static void pad(StringBuilder sb, int from, int width) {
+        while (sb.length() - from < width) sb.append(' ');
+    }
+
+    // Streaming mode only keeps SYMTAB resident, so print it (and unresolved references) at the end
+    void displaySymbols() {
+        out.newline().str("--- SYMTAB ---").newline();
+        printSymtab();
+        if (!LITTAB.isEmpty()) {
+            out.newline().str("--- LITTAB ---").newline();
+            printLittab();
+            out.newline().str("--- POOLTAB ---").newline();
+            printPooltab();
         }
-        
-        intermediateCode.add(String.format("%-5s | %-8s | %-8s | %-8s", lc, opcode, operand1, operand2));
+
+        fixups.forEach((name, refs) -> out.str("ERROR: undefined symbol ").str(name)
+                .str(" referenced at LC ").str(refs.toString()).newline());
     }
 
-    static void displayOutput() {
-        System.out.println("=== PASS 1 OUTPUT ===\n");
+    void displayOutput() {
+        out.str("=== PASS 1 OUTPUT ===").newline().newline();
+
+        out.str("--- 1. OPTAB ---").newline();
+        OPTAB.forEach((k, v) -> out.str(k, 8).str(" | ").str(v, 8).newline());
 
-        System.out.println("--- 1. OPTAB ---");
-        OPTAB.forEach((k, v) -> System.out.printf("%-8s | %-8s%n", k, v));
+        out.newline().str("--- 2. REGTAB ---").newline();
+        REGTAB.forEach((k, v) -> out.str(k, 8).str(" | ").str(v, 8).newline());
 
-        System.out.println("\n--- 2. REGTAB ---");
-        REGTAB.forEach((k, v) -> System.out.printf("%-8s | %-8s%n", k, v));
+        out.newline().str("--- 3. SYMTAB ---").newline();
+        printSymtab();
+
+        int section = 4;
+        if (!LITTAB.isEmpty()) {
+            out.newline().str("--- ").dec(section++).str(". LITTAB ---").newline();
+            printLittab();
+            out.newline().str("--- ").dec(section++).str(". POOLTAB ---").newline();
+            printPooltab();
+        }
+
+        out.newline().str("--- ").dec(section).str(". INTERMEDIATE CODE ---").newline();
+        printICHeader();
+        intermediateCode.forEach(line -> out.str(line).newline());
+        out.flush();
+    }
 
-        System.out.println("\n--- 3. SYMTAB ---");
-        System.out.printf("%-5s | %-8s | %-8s | %-8s%n", "ID", "NAME", "ADDRESS", "LENGTH");
-        System.out.println("-----------------------------------");
-        SYMTAB.values().forEach(s -> System.out.printf("%-5d | %-8s | %-8d | %-8d%n", s.id, s.name, s.address, s.length));
+    void printSymtab() {
+        out.str("ID", 5).str(" | ").str("NAME", 8).str(" | ").str("ADDRESS", 8).str(" | ").str("LENGTH", 8).newline();
+        out.str("-----------------------------------").newline();
+        for (SymbolEntry e : SYMTAB.values()) {
+            out.decLeft(e.id, 5).str(" | ").str(e.name, 8).str(" | ").decLeft(e.address, 8).str(" | ").decLeft(e.length, 8).newline();
+        }
+    }
+
+    void printLittab() {
+        out.str("ID", 5).str(" | ").str("LITERAL", 8).str(" | ").str("ADDRESS", 8).newline();
+        out.str("--------------------------").newline();
+        for (LiteralEntry e : LITTAB) {
+            out.decLeft(e.id, 5).str(" | ").str(e.text, 8).str(" | ").decLeft(e.address, 8).newline();
+        }
+    }
+
+    // Pool number -> first literal (LITTAB ID) and how many literals the pool holds
+    void printPooltab() {
+        out.str("POOL", 5).str(" | ").str("FIRST", 8).str(" | ").str("COUNT", 8).newline();
+        out.str("--------------------------").newline();
+        for (int p = 0; p < POOLTAB.size(); p++) {
+            int next = (p + 1 < POOLTAB.size()) ? POOLTAB.get(p + 1) : LITTAB.size();
+            out.decLeft(p + 1, 5).str(" | ").decLeft(POOLTAB.get(p) + 1, 8).str(" | ").decLeft(next - POOLTAB.get(p), 8).newline();
+        }
+    }
 
-        System.out.println("\n--- 4. INTERMEDIATE CODE ---");
-        System.out.printf("%-5s | %-8s | %-8s | %-8s%n", "LC", "OPCODE", "OP1", "OP2");
-        System.out.println("-----------------------------------");
-        intermediateCode.forEach(System.out::println);
+    void printICHeader() {
+        out.str("LC", 5).str(" | ").str("OPCODE", 8).str(" | ").str("OP1", 8).str(" | ").str("OP2", 8).newline();
+        out.str("-----------------------------------").newline();
     }
 }
\ No newline at end of file
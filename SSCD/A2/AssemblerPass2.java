@@ -1,42 +1,99 @@
+import java.io.*;
 import java.util.*;
-
-class ICLine {
-    String address;
-    String type;
-    String opcode;
-    String op1;
-    String op2;
-
-    ICLine(String a, String t, String o, String o1, String o2) {
-        address = a;
-        type = t;
-        opcode = o;
-        op1 = o1;
-        op2 = o2;
-    }
-}
+import java.util.concurrent.*;
+import java.util.stream.IntStream;
 
 public class AssemblerPass2 {
 
-    static Map<Integer, Integer> symtab = new HashMap<>();
-    static Map<Integer, Integer> littab = new HashMap<>();
-    static Map<String, String> optab = new HashMap<>();
-    static List<ICLine> ic = new ArrayList<>();
+    // Per-unit state: one AssemblerPass2 instance translates one program
+    // Indexed by symbol / literal ID (IDs are dense), see common/IntTable
+    IntTable symtab = new IntTable();
+    IntTable littab = new IntTable();
+    List<ICLine> ic = new ArrayList<>();
+
+    // All listing output is batched through one writer (see common/ObjectCodeWriter)
+    ObjectCodeWriter out = ObjectCodeWriter.stdout();
+    // Phase timers and counters (see common/Metrics); written to metricsFile with --metrics
+    Metrics metrics = new Metrics();
+    String metricsFile = null;
+    String objectFile = null;   // --object: relocatable object instead of the listing
+    boolean failed = false;     // an undefined symbol or literal stopped the translation
 
     public static void main(String[] args) {
+        AssemblerPass2 pass2 = new AssemblerPass2();
+        pass2.run(args);
+        if (pass2.metricsFile != null) pass2.metrics.write(pass2.metricsFile);
+        if (pass2.failed) System.exit(1);
+    }
+
+    void run(String[] args) {
+
+        // --metrics m.json|m.csv and --object unit.sob may come anywhere, the other arguments are positional
+        List<String> rest = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--metrics") && i + 1 < args.length) metricsFile = args[++i];
+            else if (args[i].equals("--object") && i + 1 < args.length) objectFile = args[++i];
+            else rest.add(args[i]);
+        }
+        args = rest.toArray(new String[0]);
 
         loadTables();
+
+        // java AssemblerPass2 ic.icb --object unit.sob  -> relocatable object for the linker
+        if (args.length > 0 && objectFile != null) {
+            writeObject(args[0], objectFile);
+            return;
+        }
+
+        // java AssemblerPass2 ic.icb [--parallel [threads]]  -> binary IC written by "java a1 --binary ic.icb"
+        if (args.length > 0) {
+            int threads = 1;
+            if (args.length > 1 && args[1].equals("--parallel")) {
+                threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            }
+            runBinary(args[0], threads);
+            return;
+        }
+
         loadIC();
 
-        System.out.println("LC\tMachine Code");
-        System.out.println("----------------------------");
+        printHeader();
 
-        for (ICLine line : ic) {
-            processLine(line);
+        long before = out.bytesWritten();
+        try (Metrics.Phase phase = metrics.phase("pass2")) {
+            for (ICLine line : ic) {
+                processLine(line);
+            }
+            phase.lines(ic.size());
+        } catch (IllegalStateException e) {
+            fail(e);
+            return;
         }
+        out.flush();
+        recordPassTwo(ic.size(), before);
+    }
+
+    // Undefined symbol / literal: the lines translated so far, then the error, as a1 reports them
+    void fail(IllegalStateException e) {
+        Throwable cause = e;
+        while (cause.getCause() instanceof IllegalStateException) cause = cause.getCause(); // rethrown by a worker thread
+        out.str("ERROR: ").str(cause.getMessage()).newline();
+        out.flush();
+        failed = true;
+    }
+
+    void recordPassTwo(long records, long bytesBefore) {
+        metrics.add("pass2.records", records);
+        metrics.add("pass2.symtab_size", symtab.size());
+        metrics.add("pass2.bytes", out.bytesWritten() - bytesBefore);
+    }
+
+    void printHeader() {
+        out.str("LC\tMachine Code").newline();
+        out.str("----------------------------").newline();
     }
 
-    static void loadTables() {
+    void loadTables() {
 
         // Symbol Table
         symtab.put(1, 500);
@@ -49,15 +106,11 @@ public class AssemblerPass2 {
         littab.put(1, 800);
         littab.put(2, 804);
 
-        // Opcode Table
-        optab.put("01", "58"); // L
-        optab.put("02", "5A"); // A
-        optab.put("03", "50"); // ST
-        optab.put("04", "47"); // BNE
-        optab.put("05", "07"); // BR
+        // Opcode Table: IC opcode -> machine opcode comes from the generated
+        // common/Opcodes.machineOpcode (01 L, 02 A, 03 ST, 04 BNE, 05 BR, see common/isa.def)
     }
 
-    static void loadIC() {
+    void loadIC() {
 
         ic.add(new ICLine("-", "AD", "01", "-", "C,500"));
         ic.add(new ICLine("500", "IS", "01", "1", "L,1"));
@@ -74,25 +127,274 @@ public class AssemblerPass2 {
         ic.add(new ICLine("-", "DL", "-", "-", "C,4"));
     }
 
-    static void processLine(ICLine line) {
+    void processLine(ICLine line) {
 
         if (line.type.equals("AD"))
             return;
 
         if (line.type.equals("DL")) {
             if (line.opcode.equals("01")) { // DC
-                System.out.println(line.address + "\t" + String.format("%06d", getConstant(line.op2)));
+                out.str(line.address).tab().dec(getConstant(line.op2), 6).newline();
             }
             return;
         }
 
         if (line.type.equals("IS")) {
 
-            String machineOpcode = optab.get(line.opcode);
+            int machineOpcode = Opcodes.machineOpcode(Integer.parseInt(line.opcode));
             String reg = resolveRegister(line.op1);
-            String mem = resolveOperand(line.op2);
+            int mem = resolveOperand(line.op2);
+
+            out.str(line.address).tab();
+            machineOpcode(out, machineOpcode).str(reg).dec(mem, 3).newline();
+        }
+    }
+
+    // ================= BINARY IC =================
+
+    void runBinary(String file, int threads) {
+        try (ICRecord.Reader in = new ICRecord.Reader(new FileInputStream(file))) {
+            runBinary(in, threads);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (IllegalStateException e) {
+            fail(e);
+        }
+    }
+
+    // Object code for every record of in (IC, then its symbol section), written to out
+    void runBinary(ICRecord.Reader in, int threads) throws IOException {
+        long before = out.bytesWritten();
+        List<ICRecord> records = new ArrayList<>();
+        try (Metrics.Phase phase = metrics.phase("pass2")) {
+            ICRecord r = new ICRecord();
+            while (in.next(r)) {
+                records.add(r);
+                r = new ICRecord();
+            }
+
+            // Symbol and literal sections follow the IC; they replace the demo SYMTAB / LITTAB
+            symtab.clear();
+            in.readSymbols(symtab);
+            littab.clear();
+            in.readLiterals(littab);
 
-            System.out.println(line.address + "\t" + machineOpcode + reg + mem);
+            printHeader();
+            if (threads > 1) {
+                emitParallel(records, out, threads);
+            } else {
+                for (ICRecord rec : records) {
+                    processRecord(rec);
+                }
+            }
+            out.flush();
+            phase.lines(records.size());
+        }
+        recordPassTwo(records.size(), before);
+    }
+
+    // ================= RELOCATABLE OBJECT =================
+    // Same translation as runBinary, but into a relocatable module (common/ObjectFile) instead of
+    // the listing: operands that are label or literal addresses are marked for relocation, labels
+    // become the unit's globals and symbols the unit never defines become external references,
+    // left for the linker (toolchain/Linker) to resolve instead of failing here.
+
+    void writeObject(String icFile, String objFile) {
+        try (ICRecord.Reader in = new ICRecord.Reader(new FileInputStream(icFile));
+             OutputStream os = new FileOutputStream(objFile)) {
+            toObject(in).write(os);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (IllegalStateException e) {
+            fail(e);
+        }
+    }
+
+    ObjectFile.Builder toObject(ICRecord.Reader in) throws IOException {
+        List<ICRecord> records = new ArrayList<>();
+        ObjectFile.Builder obj = new ObjectFile.Builder();
+        long relocated = 0, external = 0;
+        try (Metrics.Phase phase = metrics.phase("pass2")) {
+            ICRecord r = new ICRecord();
+            while (in.next(r)) {
+                records.add(r);
+                r = new ICRecord();
+            }
+            symtab.clear();
+            Map<Integer, String> names = new HashMap<>();
+            in.readSymbols(symtab, names);
+            littab.clear();
+            in.readLiterals(littab);
+
+            for (ICRecord rec : records) {
+                if (rec.cls == ICRecord.DL) {
+                    if (rec.opcode == 1) obj.data(rec.lc, rec.value);   // DC
+                    else obj.reserve(rec.lc, rec.value);                 // DS
+                } else if (rec.cls == ICRecord.IS) {
+                    int machine = Opcodes.machineOpcode(rec.opcode);
+                    if (rec.kind == ICRecord.SYMBOL && !symtab.isDefined(rec.value)) {
+                        obj.instruction(rec.lc, machine, rec.reg, 0);
+                        obj.external(rec.lc, names.get(rec.value));
+                        external++;
+                    } else {
+                        obj.instruction(rec.lc, machine, rec.reg, resolveOperand(rec.kind, rec.value));
+                        if (rec.kind == ICRecord.SYMBOL || rec.kind == ICRecord.LITERAL) {
+                            obj.relocate(rec.lc);
+                            relocated++;
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<Integer, String> e : names.entrySet()) {
+                if (symtab.isDefined(e.getKey())) obj.global(e.getValue(), symtab.get(e.getKey()));
+            }
+            phase.lines(records.size());
+        }
+        metrics.add("pass2.records", records.size());
+        metrics.add("pass2.relocations", relocated);
+        metrics.add("pass2.external_refs", external);
+        return obj;
+    }
+
+    // ================= STREAMING PASS 2 =================
+    // For a pipelined build: records are translated while Pass 1 is still producing them.
+    // DEF records give label and literal addresses as soon as Pass 1 sees them, so only instructions
+    // that use a symbol not yet defined (forward references) or a literal whose pool (LTORG / END)
+    // has not been placed yet have to wait. Output stays in IC order: once
+    // the oldest such instruction is waiting, the records behind it are queued too and translated
+    // as soon as everything in front of them is resolved. The symbol section at the end settles
+    // whatever is left (undefined symbols fail as in runBinary).
+
+    private final ArrayDeque<ICRecord> held = new ArrayDeque<>();
+
+    void runStreaming(ICRecord.Reader in) throws IOException {
+        long bytesBefore = out.bytesWritten();
+        long records = 0, deferred = 0;
+        try (Metrics.Phase phase = metrics.phase("pass2")) {
+            symtab.clear();
+            littab.clear();
+            printHeader();
+            ICRecord r = new ICRecord();
+            while (in.next(r)) {
+                records++;
+                if (r.cls == ICRecord.DEF && r.kind == ICRecord.LITERAL) {
+                    littab.put(r.value, r.lc);
+                    release();
+                } else if (r.cls == ICRecord.DEF) {
+                    int before = symtab.get(r.value);
+                    if (before != IntTable.UNDEFINED && before != r.lc)
+                        throw new IllegalStateException("symbol " + r.value + " redefined at " + r.lc + " (was " + before + ")");
+                    symtab.put(r.value, r.lc);
+                    release();
+                } else if (held.isEmpty() && resolved(r)) {
+                    translate(r, out);
+                } else {
+                    held.add(r);
+                    deferred++;
+                    r = new ICRecord(); // held records keep their own object
+                }
+            }
+
+            // Final addresses for anything still waiting
+            in.readSymbols(symtab);
+            in.readLiterals(littab);
+            release();
+            if (!held.isEmpty()) {
+                translate(held.peek(), out); // reports the undefined symbol
+            }
+            out.flush();
+            phase.lines(records);
+        }
+        recordPassTwo(records, bytesBefore);
+        metrics.add("pass2.deferred_records", deferred);
+    }
+
+    private boolean resolved(ICRecord r) {
+        if (r.cls != ICRecord.IS) return true;
+        if (r.kind == ICRecord.SYMBOL) return symtab.isDefined(r.value);
+        if (r.kind == ICRecord.LITERAL) return littab.isDefined(r.value);
+        return true;
+    }
+
+    // Translates queued records from the front until the next one that is still unresolved
+    private void release() {
+        while (!held.isEmpty() && resolved(held.peek())) {
+            translate(held.poll(), out);
+        }
+    }
+
+    void processRecord(ICRecord r) {
+        translate(r, out);
+    }
+
+    // Same translation as processLine, but straight from the decoded fields.
+    // Writes "LC<TAB>code\n" (nothing for AD / DS), shared by the sequential and parallel paths.
+    void translate(ICRecord r, ObjectCodeWriter w) {
+
+        if (r.cls == ICRecord.AD)
+            return;
+
+        if (r.cls == ICRecord.DL) {
+            if (r.opcode == 1) { // DC
+                w.dec(r.lc).tab().dec(r.value, 6).newline();
+            }
+            return;
+        }
+
+        if (r.cls == ICRecord.IS) {
+            int operand = resolveOperand(r.kind, r.value); // before any output: an undefined symbol leaves no partial line
+            w.dec(r.lc).tab();
+            machineOpcode(w, Opcodes.machineOpcode(r.opcode)).dec(r.reg).dec(operand, 3).newline();
+        }
+    }
+
+    // Two hex digits ("5A"); an opcode with no machine equivalent prints as "null" like a failed OPTAB lookup did
+    static ObjectCodeWriter machineOpcode(ObjectCodeWriter w, int machineOpcode) {
+        return (machineOpcode == Opcodes.NONE) ? w.str("null") : w.hex(machineOpcode, 2);
+    }
+
+    // ================= PARALLEL PASS 2 =================
+    // Once Pass 1 has fixed every address, records translate independently. The IC is cut into
+    // chunks, each chunk is translated into its own byte buffer on a ForkJoinPool, and the buffers
+    // are written back in chunk (= address) order, so output matches the sequential path byte for byte.
+    // Chunks are processed in waves so only a few chunks of output are held at once.
+
+    static final int CHUNK = 1 << 14;
+
+    void emitParallel(List<ICRecord> records, ObjectCodeWriter w, int threads) {
+        int chunks = (records.size() + CHUNK - 1) / CHUNK;
+        int wave = threads * 4;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int first = 0; first < chunks; first += wave) {
+                int from = first, to = Math.min(chunks, first + wave);
+                byte[][] parts = pool.submit(() -> IntStream.range(from, to).parallel()
+                        .mapToObj(c -> translateChunk(records, c * CHUNK, Math.min(records.size(), (c + 1) * CHUNK)))
+                        .toArray(byte[][]::new)).get();
+                for (byte[] part : parts) w.bytes(part);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    byte[] translateChunk(List<ICRecord> records, int from, int to) {
+        ObjectCodeWriter chunk = ObjectCodeWriter.memory();
+        for (int i = from; i < to; i++) translate(records.get(i), chunk);
+        return chunk.toByteArray();
+    }
+
+    int resolveOperand(byte kind, int value) {
+        switch (kind) {
+            case ICRecord.SYMBOL:  return lookup(symtab, value, "symbol");
+            case ICRecord.LITERAL: return lookup(littab, value, "literal");
+            case ICRecord.CONST:   return value;
+            default:               return 0;
         }
     }
 
@@ -101,26 +403,34 @@ public class AssemblerPass2 {
         return r;
     }
 
-    static String resolveOperand(String op) {
+    // Returns the operand address/value; the caller prints it as a 3-digit field
+    int resolveOperand(String op) {
 
         if (op == null || op.equals("-"))
-            return "000";
+            return 0;
 
         if (op.startsWith("S")) {
             int idx = Integer.parseInt(op.split(",")[1]);
-            return String.format("%03d", symtab.get(idx));
+            return lookup(symtab, idx, "symbol");
         }
 
         if (op.startsWith("L")) {
             int idx = Integer.parseInt(op.split(",")[1]);
-            return String.format("%03d", littab.get(idx));
+            return lookup(littab, idx, "literal");
         }
 
         if (op.startsWith("C")) {
-            return String.format("%03d", getConstant(op));
+            return getConstant(op);
         }
 
-        return String.format("%03d", Integer.parseInt(op));
+        return Integer.parseInt(op);
+    }
+
+    static int lookup(IntTable table, int id, String what) {
+        int address = table.get(id);
+        if (address == IntTable.UNDEFINED)
+            throw new IllegalStateException("undefined " + what + " " + id);
+        return address;
     }
 
     static int getConstant(String c) {
@@ -0,0 +1,16 @@
+// One IC line of the text format: address, class, opcode and the two operand fields
+class ICLine {
+    String address;
+    String type;
+    String opcode;
+    String op1;
+    String op2;
+
+    ICLine(String a, String t, String o, String o1, String o2) {
+        address = a;
+        type = t;
+        opcode = o;
+        op1 = o1;
+        op2 = o2;
+    }
+}
@@ -11,6 +11,9 @@ public class MacroPass1 {
     
     static List<String> ala = new ArrayList<>(); 
 
+    // Phase timer and table sizes (see common/Metrics), written with --metrics m.json|m.csv
+    static Metrics metrics = new Metrics();
+
     // We bring back the Helper Class because a Table usually holds multiple properties.
     static class MNTEntry {
         int index;      // The Macro's serial number (1, 2, 3...)
@@ -39,10 +42,16 @@ public class MacroPass1 {
 
         pass1(input);
         printTables();
+
+        if (args.length > 1 && args[0].equals("--metrics")) metrics.write(args[1]);
     }
 
-    private static void pass1(String[][] source) {
-        boolean isMacroDefinition = false;
+    // A MACRO block may contain further MACRO blocks. Each open definition keeps its own ALA and
+    // body lines, and is copied into the MDT when its MEND arrives (inner macros first).
+    // An inner body may only use its own parameters; one of an enclosing macro is rejected.
+    static void pass1(String[][] source) {
+        Metrics.Phase phase = metrics.phase("macro_pass1");
+        Deque<Definition> open = new ArrayDeque<>(); // Definitions in progress, innermost on top
         boolean isPrototype = false;
         int mntCounter = 1; // We need to manually track the Index now
 
@@ -52,44 +61,80 @@ public class MacroPass1 {
             String op2 = line[3];
 
             if ("MACRO".equals(opcode)) {
-                isMacroDefinition = true;
                 isPrototype = true;
-                ala.clear(); 
                 continue;
             }
 
-            if (isMacroDefinition) {
-                if ("MEND".equals(opcode)) {
-                    mdt.add("MEND");
-                    isMacroDefinition = false;
-                } 
-                else if (isPrototype) {
-                    // --- REFACTORED LOGIC ---
-                    // 1. Create the Entry Object with all details (Index, Name, Pointer)
-                    MNTEntry entry = new MNTEntry(mntCounter++, opcode, mdt.size());
-                    
-                    // 2. Store it in Map for O(1) Access by Name
-                    mnt.put(opcode, entry);
-
-                    // Add Args to ALA
-                    if (op1 != null && op1.startsWith("&")) ala.add(op1);
-                    if (op2 != null && op2.startsWith("&")) ala.add(op2);
-
-                    // Add Prototype to MDT
-                    mdt.add(opcode + " " + formatOperands(op1, op2));
-                    isPrototype = false;
-                } 
-                else {
-                    // Body Substitution
-                    String subOp1 = substituteIndex(op1);
-                    String subOp2 = substituteIndex(op2);
-                    mdt.add(opcode + " " + formatOperands(subOp1, subOp2));
-                }
+            if (isPrototype) {
+                Definition def = new Definition(opcode);
+
+                // Add Args to this definition's ALA
+                if (op1 != null && op1.startsWith("&")) def.ala.add(op1);
+                if (op2 != null && op2.startsWith("&")) def.ala.add(op2);
+
+                // Prototype is the first line of the definition
+                def.lines.add(opcode + " " + formatOperands(op1, op2));
+                open.push(def);
+                isPrototype = false;
+                continue;
+            }
+
+            if (open.isEmpty()) continue;
+
+            Definition def = open.peek();
+            if ("MEND".equals(opcode)) {
+                def.lines.add("MEND");
+                open.pop();
+
+                // 1. Create the Entry Object with all details (Index, Name, Pointer)
+                MNTEntry entry = new MNTEntry(mntCounter++, def.name, mdt.size());
+
+                // 2. Store it in Map for O(1) Access by Name
+                mnt.put(def.name, entry);
+                mdt.addAll(def.lines);
+                ala = def.ala; // ALA shown is the one of the last completed definition
+            } 
+            else {
+                // Body Substitution
+                checkOuterParameters(open, op1);
+                checkOuterParameters(open, op2);
+                String subOp1 = substituteIndex(def.ala, op1);
+                String subOp2 = substituteIndex(def.ala, op2);
+                def.lines.add(opcode + " " + formatOperands(subOp1, subOp2));
+            }
+        }
+        phase.lines(source.length);
+        phase.close();
+        metrics.add("macro.mnt_size", mnt.size());
+        metrics.add("macro.mdt_size", mdt.size());
+    }
+
+    // A macro definition still being read
+    static class Definition {
+        String name;
+        List<String> ala = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+
+        Definition(String name) {
+            this.name = name;
+        }
+    }
+
+    // Throws when arg is not in the innermost definition's ALA but is in an enclosing one's
+    private static void checkOuterParameters(Deque<Definition> open, String arg) {
+        if (arg == null) return;
+        Definition inner = open.peek();
+        if (inner.ala.contains(arg)) return;
+        for (Definition outer : open) {
+            if (outer != inner && outer.ala.contains(arg)) {
+                throw new IllegalArgumentException("macro " + inner.name + " uses " + arg
+                        + ", a parameter of enclosing macro " + outer.name
+                        + "; nested definitions can only use their own parameters");
             }
         }
     }
 
-    private static String substituteIndex(String arg) {
+    private static String substituteIndex(List<String> ala, String arg) {
         if (arg == null) return null;
         int index = ala.indexOf(arg);
         return (index != -1) ? "#" + (index + 1) : arg;
@@ -0,0 +1,63 @@
+// Checks for nested macro definitions (no test framework: run it, exit status 1 on a failure)
+//   javac -sourcepath .:../common MacroPass1Test.java && java -cp .:../common MacroPass1Test
+public class MacroPass1Test {
+
+    static int failures = 0;
+
+    public static void main(String[] args) {
+        innerMacroUsesOwnParameters();
+        innerMacroUsingOuterParameterIsRejected();
+        System.out.println(failures == 0 ? "All tests passed" : failures + " test(s) failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    static void innerMacroUsesOwnParameters() {
+        reset();
+        MacroPass1.pass1(new String[][] {
+            {null, "MACRO", null, null},
+            {null, "OUTER", "&A", null},
+            {null, "MACRO", null, null},
+            {null, "INNER", "&B", null},
+            {null, "ADD", "AREG", "&B"},
+            {null, "MEND", null, null},
+            {null, "INNER", "&A", null},
+            {null, "MEND", null, null}
+        });
+        check("inner macro uses its own parameter",
+                MacroPass1.mdt.contains("ADD AREG, #1") && MacroPass1.mdt.contains("INNER #1"),
+                MacroPass1.mdt.toString());
+    }
+
+    static void innerMacroUsingOuterParameterIsRejected() {
+        reset();
+        try {
+            MacroPass1.pass1(new String[][] {
+                {null, "MACRO", null, null},
+                {null, "OUTER", "&A", null},
+                {null, "MACRO", null, null},
+                {null, "INNER", "&B", null},
+                {null, "ADD", "AREG", "&A"},
+                {null, "MEND", null, null},
+                {null, "MEND", null, null}
+            });
+            check("outer parameter in inner body is rejected", false, MacroPass1.mdt.toString());
+        } catch (IllegalArgumentException e) {
+            check("outer parameter in inner body is rejected",
+                    e.getMessage().contains("&A") && e.getMessage().contains("OUTER"), e.getMessage());
+        }
+    }
+
+    static void reset() {
+        MacroPass1.mdt.clear();
+        MacroPass1.mnt.clear();
+        MacroPass1.ala.clear();
+    }
+
+    static void check(String name, boolean ok, String detail) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            System.out.println("  got: " + detail);
+            failures++;
+        }
+    }
+}
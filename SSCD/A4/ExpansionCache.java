@@ -0,0 +1,103 @@
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded LRU cache of finished macro expansions.
+// Key = (macro, actual arguments); value = the expanded block already encoded as output bytes,
+// so a hit skips MDT traversal and substitution entirely and is written out as one block.
+// Capacity is a byte budget over the cached blocks (plus a rough per-entry overhead).
+class ExpansionCache {
+    static final int ENTRY_OVERHEAD = 96; // key, array headers, map node
+
+    private final long maxBytes;
+    private long usedBytes = 0;
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+
+    // Access-ordered LinkedHashMap = LRU; guarded by "this" so concurrent expanders can share it
+    private final LinkedHashMap<Key, byte[]> map = new LinkedHashMap<>(256, 0.75f, true);
+
+    ExpansionCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    static final class Key {
+        final MacroAssembler.MNTEntry macro;
+        final String[] args;
+        final int hash;
+
+        Key(MacroAssembler.MNTEntry macro, String[] args) {
+            this.macro = macro;
+            this.args = args;
+            this.hash = 31 * System.identityHashCode(macro) + Arrays.hashCode(args);
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return macro == k.macro && Arrays.equals(args, k.args);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        long size() {
+            long n = ENTRY_OVERHEAD;
+            for (String a : args) n += 40 + a.length();
+            return n;
+        }
+    }
+
+    synchronized byte[] get(Key key) {
+        byte[] block = map.get(key);
+        if (block != null) hits.increment();
+        else misses.increment();
+        return block;
+    }
+
+    synchronized void put(Key key, byte[] block) {
+        long size = key.size() + block.length;
+        if (size > maxBytes) return; // Would never fit
+        byte[] old = map.put(key, block);
+        if (old != null) usedBytes -= key.size() + old.length;
+        usedBytes += size;
+
+        Iterator<Map.Entry<Key, byte[]>> it = map.entrySet().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Key, byte[]> eldest = it.next();
+            usedBytes -= eldest.getKey().size() + eldest.getValue().length;
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    synchronized int size() {
+        return map.size();
+    }
+
+    synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    double hitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return (total == 0) ? 0 : (double) h / total;
+    }
+
+    void clear() {
+        synchronized (this) {
+            map.clear();
+            usedBytes = 0;
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    public String toString() {
+        return String.format("entries=%d bytes=%d/%d hits=%d misses=%d evictions=%d hitRate=%.1f%%",
+                size(), usedBytes(), maxBytes, hits.sum(), misses.sum(), evictions.sum(), hitRate() * 100);
+    }
+}
@@ -1,17 +1,44 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
 public class MacroAssembler {
 
     // --- Data Structures ---
-    static List<String> mdt = new ArrayList<>();
-    static Map<String, MNTEntry> mnt = new LinkedHashMap<>();
-    static List<ALAEntry> ala = new ArrayList<>(); 
+    // Per-unit tables: each MacroAssembler instance processes one source (see toolchain/BuildDriver)
+    List<String> mdt = new ArrayList<>();
+    List<MDTLine> mdtCode = new ArrayList<>(); // Same MDT, pre-parsed for expansion (same index)
+    Map<String, MNTEntry> mnt = new LinkedHashMap<>();
+    // Same MNT indexed by SymbolPool ID (shared with the assembler passes), used for call lookups.
+    // A long-running server gives every request its own pool so IDs do not pile up across requests.
+    SymbolPool pool = SymbolPool.SHARED;
+    MNTEntry[] mntById = new MNTEntry[64];
+
+    // Expanded source is batched through one writer instead of a println per line
+    ObjectCodeWriter out = ObjectCodeWriter.stdout();
+
+    // ".NAME EXPANSION START" comment lines; off when the output is fed straight into Pass 1
+    boolean markers = true;
+
+    // Finished expansions keyed on (macro, actual args); null disables caching. The cache may be
+    // shared with other instances (sharedCache), so hits and misses of this unit are counted here.
+    ExpansionCache cache = new ExpansionCache(16L << 20);
+    boolean sharedCache = false;
+    final LongAdder cacheHits = new LongAdder();
+    final LongAdder cacheMisses = new LongAdder();
+
+    // Phase timers and counters (see common/Metrics); written to metricsFile with --metrics
+    Metrics metrics = new Metrics();
+    String metricsFile = null;
 
     // --- Helper Classes ---
     static class MNTEntry {
         String name;
         int mdtIndex; // Pointer to MDT index
         int argCount; // Number of arguments (for safety)
+        List<ALAEntry> ala = new ArrayList<>(); // This macro's own formal parameters
 
         MNTEntry(String name, int mdtIndex, int argCount) {
             this.name = name;
@@ -32,7 +59,35 @@ public class MacroAssembler {
         }
     }
 
+    // One MDT line, parsed once in Pass 1.
+    // Parameters are stored as slot numbers, so expansion is a slot lookup instead of a string search.
+    static class MDTLine {
+        String opcode;
+        String[] operands; // literal operand text (null for a parameter slot or a missing operand)
+        int[] slots;       // 0-based argument slot per operand, -1 for literal text
+        MNTEntry call;     // Set when the line is itself a macro call (nested expansion)
+
+        MDTLine(String opcode, String[] operands, int[] slots) {
+            this.opcode = opcode;
+            this.operands = operands;
+            this.slots = slots;
+        }
+
+        boolean isMend() {
+            return "MEND".equals(opcode);
+        }
+    }
+
     public static void main(String[] args) {
+        MacroAssembler m = new MacroAssembler();
+        m.run(args);
+        if (m.metricsFile != null) {
+            m.recordCache();
+            m.metrics.write(m.metricsFile);
+        }
+    }
+
+    void run(String[] args) {
         // Input Source Code
         String[][] input = {
             // Macro Definition
@@ -51,8 +106,45 @@ public class MacroAssembler {
             {null, "END", null, null}
         };
 
+        // java MacroAssembler [source.asm] [--lib macros.mlb] [--save-lib macros.mlb] [--stats] [--metrics m.json|m.csv]
+        // A source file replaces the demo input (e.g. a definitions file to compile into a library)
+        boolean stats = false;
+        String saveLib = null;
+        String sourceFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--stats")) {
+                stats = true;
+            } else if (args[i].equals("--lib") && i + 1 < args.length) {
+                // Precompiled definitions go in first; definitions in the source override them
+                try {
+                    MacroLibrary.load(this, args[++i]);
+                } catch (IOException e) { e.printStackTrace(); }
+            } else if (args[i].equals("--save-lib") && i + 1 < args.length) {
+                saveLib = args[++i];
+            } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                metricsFile = args[++i];
+            } else if (!args[i].startsWith("--")) {
+                sourceFile = args[i];
+            }
+        }
+        if (sourceFile != null) {
+            // Read after --lib, so calls of library macros can carry a label
+            try {
+                input = readSource(sourceFile, mnt.keySet());
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+
         System.out.println("--- PASS 1: PROCESSING DEFINITIONS ---");
         pass1(input);
+        if (saveLib != null) {
+            try {
+                MacroLibrary.save(this, saveLib);
+                System.out.println("Macro library written to " + saveLib);
+            } catch (IOException e) { e.printStackTrace(); }
+        }
         printTables(true); // Print tables after Pass 1
 
         System.out.println("\n--- PASS 2: EXPANDING MACROS ---");
@@ -60,116 +152,383 @@ public class MacroAssembler {
         
         System.out.println("\n--- FINAL STATE OF TABLES ---");
         printTables(false); // Print tables again to see Actual Arguments
+
+        if (stats) {
+            System.out.println("\nExpansion cache: " + cache);
+        }
     }
 
     // ================= PASS 1 =================
-    private static void pass1(String[][] source) {
-        boolean isMacroDefinition = false;
-        boolean isPrototype = false;
-
-        for (String[] line : source) {
-            String opcode = line[1];
-            String op1 = line[2];
-            String op2 = line[3];
-
-            if ("MACRO".equals(opcode)) {
-                isMacroDefinition = true;
-                isPrototype = true;
-                ala.clear(); // Reset ALA for new macro definition
-                continue;
-            }
+    // MACRO blocks may be nested: each open definition collects its own lines and is copied into
+    // the MDT when its MEND arrives, so an inner macro becomes a normal MNT entry of its own.
+    // An inner body may therefore only use its own parameters; a parameter of an enclosing macro
+    // is rejected (it would otherwise be copied through as literal text).
+    void pass1(String[][] source) {
+        try (Metrics.Phase phase = metrics.phase("macro_pass1")) {
+            Deque<Definition> open = new ArrayDeque<>(); // Definitions in progress, innermost on top
+            boolean isPrototype = false;
+
+            for (String[] line : source) {
+                String opcode = line[1];
+                String op1 = line[2];
+                String op2 = line[3];
+
+                if ("MACRO".equals(opcode)) {
+                    isPrototype = true;
+                    continue;
+                }
 
-            if (isMacroDefinition) {
-                if ("MEND".equals(opcode)) {
-                    mdt.add("MEND");
-                    isMacroDefinition = false;
-                } else if (isPrototype) {
+                if (isPrototype) {
                     // 1. Process Prototype
-                    // Count args to store in MNT
-                    int argCount = 0;
-                    if (op1 != null) { ala.add(new ALAEntry(ala.size(), op1)); argCount++; }
-                    if (op2 != null) { ala.add(new ALAEntry(ala.size(), op2)); argCount++; }
+                    // Formal parameters are kept on the macro's own MNT entry
+                    MNTEntry entry = new MNTEntry(opcode, -1, 0);
+                    if (op1 != null) entry.ala.add(new ALAEntry(entry.ala.size(), op1));
+                    if (op2 != null) entry.ala.add(new ALAEntry(entry.ala.size(), op2));
+                    entry.argCount = entry.ala.size();
+
+                    Definition def = new Definition(entry);
+                    def.text.add(opcode + " " + formatOperands(op1, op2));
+                    def.code.add(new MDTLine(opcode, new String[] {op1, op2}, new int[] {-1, -1}));
+                    open.push(def);
+                    isPrototype = false;
+                    continue;
+                }
 
-                    // Add to MNT
-                    mnt.put(opcode, new MNTEntry(opcode, mdt.size(), argCount));
+                if (open.isEmpty()) continue; // Not inside a definition
 
-                    // Add to MDT (Store as string)
-                    mdt.add(opcode + " " + formatOperands(op1, op2));
-                    isPrototype = false;
+                Definition def = open.peek();
+                if ("MEND".equals(opcode)) {
+                    def.text.add("MEND");
+                    def.code.add(new MDTLine("MEND", new String[0], new int[0]));
+                    open.pop();
+
+                    // Add to MNT / MDT
+                    def.entry.mdtIndex = mdt.size();
+                    mdt.addAll(def.text);
+                    mdtCode.addAll(def.code);
+                    define(def.entry);
                 } else {
                     // 2. Process Body - Substitute &ARG with #Index
-                    String subOp1 = substituteIndex(op1);
-                    String subOp2 = substituteIndex(op2);
-                    mdt.add(opcode + " " + formatOperands(subOp1, subOp2));
+                    checkOuterParameters(open, op1);
+                    checkOuterParameters(open, op2);
+                    String subOp1 = substituteIndex(def.entry, op1);
+                    String subOp2 = substituteIndex(def.entry, op2);
+                    def.text.add(opcode + " " + formatOperands(subOp1, subOp2));
+                    def.code.add(compileLine(def.entry, opcode, op1, op2));
                 }
             }
+
+            linkCalls();
+            phase.lines(source.length);
         }
+        metrics.add("macro.mnt_size", mnt.size());
+        metrics.add("macro.mdt_size", mdt.size());
     }
 
-    // ================= PASS 2 =================
-    private static void pass2(String[][] source) {
-        boolean isMacroDefinition = false;
+    // Throws when arg is not a parameter of the innermost open definition but is one of an enclosing one
+    private static void checkOuterParameters(Deque<Definition> open, String arg) {
+        if (arg == null) return;
+        Definition inner = open.peek();
+        for (ALAEntry a : inner.entry.ala) {
+            if (a.dummy.equals(arg)) return;
+        }
+        for (Definition outer : open) {
+            if (outer == inner) continue;
+            for (ALAEntry a : outer.entry.ala) {
+                if (a.dummy.equals(arg)) {
+                    throw new IllegalArgumentException("macro " + inner.entry.name + " uses " + arg
+                            + ", a parameter of enclosing macro " + outer.entry.name
+                            + "; nested definitions can only use their own parameters");
+                }
+            }
+        }
+    }
 
-        System.out.println("EXPANDED SOURCE CODE:");
-        System.out.println("---------------------");
+    // Expansion cache totals, once per unit (evictions only for a cache of its own)
+    void recordCache() {
+        if (cache == null) return;
+        metrics.add("macro.cache_hits", cacheHits.sum());
+        metrics.add("macro.cache_misses", cacheMisses.sum());
+        if (!sharedCache) metrics.add("macro.cache_evictions", cache.evictions.sum());
+        metrics.hitRate("macro.cache_hit_rate", "macro.cache_hits", "macro.cache_misses");
+    }
 
-        for (String[] line : source) {
-            String opcode = line[1];
-            String op1 = line[2];
-            String op2 = line[3];
+    // Registers a finished definition (from source or a macro library); a later one replaces an earlier one
+    void define(MNTEntry entry) {
+        mnt.put(entry.name, entry);
+        int id = pool.intern(entry.name);
+        if (id >= mntById.length) mntById = Arrays.copyOf(mntById, Math.max(id + 1, mntById.length * 2));
+        mntById[id] = entry;
+    }
 
-            // Ignore MACRO definitions in Pass 2
-            if ("MACRO".equals(opcode)) {
-                isMacroDefinition = true;
-                continue;
-            }
-            if (isMacroDefinition) {
-                if ("MEND".equals(opcode)) isMacroDefinition = false;
-                continue; 
-            }
+    // Starts this unit's MNT/MDT with the definitions of another instance (a library loaded once
+    // and kept warm by toolchain/BuildServer). MNT entries are shared read-only; MDT lines are
+    // copied because linkCalls() relinks them when the source redefines a macro.
+    void copyDefinitions(MacroAssembler from) {
+        mdt.addAll(from.mdt);
+        for (MDTLine line : from.mdtCode) mdtCode.add(new MDTLine(line.opcode, line.operands, line.slots));
+        for (MNTEntry e : from.mnt.values()) define(e);
+        linkCalls();
+    }
 
-            // Check if this line is a Macro Call
-            if (mnt.containsKey(opcode)) {
-                expandMacro(opcode, op1, op2);
-            } else {
-                // Not a macro? Print standard line
-                System.out.println(opcode + " " + formatOperands(op1, op2));
+    // Body lines that call another macro point straight at its MNT entry
+    void linkCalls() {
+        for (MDTLine line : mdtCode) {
+            if (!line.isMend()) line.call = lookupMacro(line.opcode);
+        }
+    }
+
+    // A macro definition still being read in Pass 1
+    static class Definition {
+        MNTEntry entry;
+        List<String> text = new ArrayList<>();
+        List<MDTLine> code = new ArrayList<>();
+
+        Definition(MNTEntry entry) {
+            this.entry = entry;
+        }
+    }
+
+    // ================= PASS 2 =================
+    private void pass2(String[][] source) {
+        out.str("EXPANDED SOURCE CODE:").newline();
+        out.str("---------------------").newline();
+        expandSource(source, out, true);
+        out.flush();
+    }
+
+    // Expands one segment of source into w.
+    // Only reads MNT/MDT (fixed after Pass 1) and keeps each call's arguments in a local frame,
+    // so independent segments can be expanded on separate threads, each with its own writer.
+    // recordActuals copies the last call's arguments into the MNT's ALA for printTables
+    // (single-threaded driver only).
+    void expandSource(String[][] source, ObjectCodeWriter w, boolean recordActuals) {
+        long before = w.bytesWritten();
+        long calls = 0, expansions = 0;
+        try (Metrics.Phase phase = metrics.phase("macro_expand")) {
+            int definitionDepth = 0;
+
+            for (String[] line : source) {
+                String opcode = line[1];
+                String op1 = line[2];
+                String op2 = line[3];
+
+                // Ignore MACRO definitions (including nested ones) in Pass 2
+                if ("MACRO".equals(opcode)) {
+                    definitionDepth++;
+                    continue;
+                }
+                if (definitionDepth > 0) {
+                    if ("MEND".equals(opcode)) definitionDepth--;
+                    continue; 
+                }
+
+                // Check if this line is a Macro Call
+                MNTEntry entry = lookupMacro(opcode);
+                String label = line[0];
+                if (entry != null) {
+                    // A label on a call names the address of the first expanded line
+                    if (label != null) w.str(label).str(" DS 0").newline();
+                    String[] frame = bindArgs(entry, op1, op2);
+                    expansions += expandCached(entry, frame, w);
+                    calls++;
+                    if (recordActuals) {
+                        for (int i = 0; i < frame.length; i++) entry.ala.get(i).actual = frame[i];
+                    }
+                } else {
+                    // Not a macro? Print standard line
+                    if (label != null) w.str(label).ch(' ');
+                    w.str(opcode).ch(' ');
+                    writeOperands(op1, op2, w);
+                }
             }
+            phase.lines(source.length);
         }
+        metrics.add("macro.calls", calls);
+        metrics.add("macro.expansions", expansions);
+        metrics.add("macro.bytes", w.bytesWritten() - before);
+    }
+
+    // Thread-safe convenience: expand a segment into its own buffer
+    byte[] expandToBytes(String[][] segment) {
+        ObjectCodeWriter w = ObjectCodeWriter.memory();
+        expandSource(segment, w, false);
+        return w.toByteArray();
     }
 
     // --- Expansion Logic ---
-    private static void expandMacro(String name, String actualArg1, String actualArg2) {
-        MNTEntry entry = mnt.get(name);
-        
-        // 1. Update ALA with Actual Arguments
-        // In a real assembler, we would map specific ALA entries to this specific call.
-        // Here, we update the global ALA for demonstration.
-        if (ala.size() > 0 && actualArg1 != null) ala.get(0).actual = actualArg1;
-        if (ala.size() > 1 && actualArg2 != null) ala.get(1).actual = actualArg2;
 
-        System.out.println("." + name + " EXPANSION START"); // Comment marker
+    // Argument frame for one call: slot i holds the actual for formal #(i+1), "-" when not supplied
+    private static String[] bindArgs(MNTEntry entry, String actualArg1, String actualArg2) {
+        String[] frame = new String[entry.argCount];
+        Arrays.fill(frame, "-");
+        if (frame.length > 0 && actualArg1 != null) frame[0] = actualArg1;
+        if (frame.length > 1 && actualArg2 != null) frame[1] = actualArg2;
+        return frame;
+    }
 
-        // 2. Set MDT Pointer (Skip the prototype line)
-        int pointer = entry.mdtIndex + 1;
+    // Repeated calls with identical arguments are served from the expansion cache as one block
+    // Returns the number of macro bodies expanded (nested calls included, 0 for a cache hit)
+    private long expandCached(MNTEntry entry, String[] frame, ObjectCodeWriter w) {
+        if (cache == null) {
+            return expandMacro(entry, frame, w);
+        }
+        ExpansionCache.Key key = new ExpansionCache.Key(entry, frame);
+        byte[] block = cache.get(key);
+        long expanded = 0;
+        if (block == null) {
+            cacheMisses.increment();
+            ObjectCodeWriter buf = ObjectCodeWriter.memory();
+            expanded = expandMacro(entry, frame, buf);
+            block = buf.toByteArray();
+            cache.put(key, block);
+        } else {
+            cacheHits.increment();
+        }
+        w.bytes(block);
+        return expanded;
+    }
 
-        // 3. Loop until MEND
-        while (pointer < mdt.size()) {
-            String line = mdt.get(pointer);
-            if ("MEND".equals(line)) break;
+    // --- Nested expansion engine ---
+    // Calls inside a macro body are expanded with an explicit stack of (MDT pointer, frame)
+    // instead of Java recursion, and lines are written out as they are produced.
+    // Both limits apply per top-level call and stop runaway (e.g. self-recursive) macros.
+    int maxDepth = 64;
+    long maxExpansions = 1_000_000;
+
+    static class Activation {
+        MNTEntry macro;
+        int pointer;     // Next MDT line to expand
+        String[] frame;  // This call's actual arguments
+
+        Activation(MNTEntry macro, String[] frame) {
+            this.macro = macro;
+            this.pointer = macro.mdtIndex + 1; // Skip the prototype line
+            this.frame = frame;
+        }
+    }
 
-            // 4. Substitute #Index with Actual Value from ALA
-            String expandedLine = substituteActualArgs(line);
-            System.out.println(expandedLine);
-            pointer++;
+    private long expandMacro(MNTEntry entry, String[] frame, ObjectCodeWriter w) {
+        Deque<Activation> stack = new ArrayDeque<>();
+        long expansions = 1;
+        stack.push(new Activation(entry, frame));
+        if (markers) w.ch('.').str(entry.name).str(" EXPANSION START").newline(); // Comment marker
+
+        while (!stack.isEmpty()) {
+            Activation top = stack.peek();
+            MDTLine line = mdtCode.get(top.pointer++);
+
+            if (line.isMend()) {
+                stack.pop();
+            } else if (line.call != null) {
+                // Nested call: its actuals come from the caller's frame
+                if (stack.size() >= maxDepth)
+                    throw new IllegalStateException("macro nesting deeper than " + maxDepth + " expanding " + entry.name);
+                if (++expansions > maxExpansions)
+                    throw new IllegalStateException("more than " + maxExpansions + " expansions for one call of " + entry.name);
+                String[] inner = bindArgs(line.call, operand(line, 0, top.frame), operand(line, 1, top.frame));
+                stack.push(new Activation(line.call, inner));
+                if (markers) w.ch('.').str(line.call.name).str(" EXPANSION START").newline();
+            } else {
+                // Fill parameter slots from this call's frame
+                emitLine(line, top.frame, w);
+            }
         }
+        return expansions;
+    }
+
+    // Writes "OPCODE op1, op2" exactly as formatOperands would, taking parameters from their slots
+    private static void emitLine(MDTLine line, String[] frame, ObjectCodeWriter w) {
+        w.str(line.opcode).ch(' ');
+        writeOperands(operand(line, 0, frame), operand(line, 1, frame), w);
+    }
+
+    // formatOperands straight into the writer, plus the newline
+    private static void writeOperands(String op1, String op2, ObjectCodeWriter w) {
+        if (op1 == null && op2 == null) { w.newline(); return; }
+        w.str(String.valueOf(op1));
+        if (op2 != null) w.str(", ").str(op2);
+        w.newline();
+    }
+
+    private static String operand(MDTLine line, int i, String[] frame) {
+        if (i >= line.slots.length) return null;
+        int slot = line.slots[i];
+        return (slot >= 0) ? frame[slot] : line.operands[i];
     }
 
     // ================= HELPERS =================
 
+    // Reads a source file into the {label, opcode, op1, op2} rows used above.
+    // Operands are separated by blanks or commas and "-" means "no operand". The first token is a
+    // label when the line has four tokens, or when it is followed by an assembler mnemonic or a
+    // macro name. Macro names are the ones given (e.g. a loaded library) plus every prototype read
+    // so far, so "L1 INCR X" is a labelled call once INCR is defined.
+    static String[][] readSource(String file) throws IOException {
+        return readSource(file, Collections.emptySet());
+    }
+
+    static String[][] readSource(String file, Set<String> macros) throws IOException {
+        return readSource(Files.readAllLines(Paths.get(file), StandardCharsets.US_ASCII), macros);
+    }
+
+    static String[][] readSource(List<String> lines) {
+        return readSource(lines, Collections.emptySet());
+    }
+
+    static String[][] readSource(List<String> lines, Set<String> macros) {
+        Set<String> names = new HashSet<>(macros);
+        boolean prototype = false;
+        List<String[]> rows = new ArrayList<>();
+        String[] t = new String[4];
+        for (String text : lines) {
+            int n = tokenize(text, t);
+            if (n == 0) continue;
+            boolean labelled = n == 4
+                    || (n >= 2 && !isOpcode(t[0], names) && isOpcode(t[1], names));
+            String[] row = new String[4];
+            for (int i = labelled ? 0 : 1, k = 0; i < 4 && k < n; i++, k++) {
+                row[i] = t[k].equals("-") ? null : t[k];
+            }
+            rows.add(row);
+            if (prototype && row[1] != null) names.add(row[1]);
+            prototype = "MACRO".equals(row[1]);
+        }
+        return rows.toArray(new String[0][]);
+    }
+
+    private static boolean isOpcode(String token, Set<String> macros) {
+        return Opcodes.mnemonic(token) != Opcodes.NONE || macros.contains(token);
+    }
+
+    // Splits on blanks and commas into t (at most t.length tokens); returns the token count
+    private static int tokenize(String text, String[] t) {
+        int n = 0, i = 0, len = text.length();
+        while (n < t.length) {
+            while (i < len && isSeparator(text.charAt(i))) i++;
+            if (i == len) break;
+            int start = i;
+            while (i < len && !isSeparator(text.charAt(i))) i++;
+            t[n++] = text.substring(start, i);
+        }
+        return n;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == ',';
+    }
+
+    // MNT lookup: one hash in the shared pool, then an array read
+    MNTEntry lookupMacro(String name) {
+        if (name == null) return null;
+        int id = pool.find(name);
+        return (id >= 0 && id < mntById.length) ? mntById[id] : null;
+    }
+
     // Pass 1: Replace &ARG1 with #1
-    private static String substituteIndex(String arg) {
+    private static String substituteIndex(MNTEntry entry, String arg) {
         if (arg == null) return null;
+        List<ALAEntry> ala = entry.ala;
         for (int i = 0; i < ala.size(); i++) {
             if (ala.get(i).dummy.equals(arg)) {
                 return "#" + (i + 1);
@@ -178,19 +537,26 @@ public class MacroAssembler {
         return arg;
     }
 
-    // Pass 2: Replace #1 with DATA1
-    private static String substituteActualArgs(String line) {
-        String result = line;
-        
-        // We look for patterns like #1, #2 and replace them with ALA.actual
-        for (ALAEntry entry : ala) {
-            String placeholder = "#" + (entry.index + 1); // e.g., #1
-            
-            if (result.contains(placeholder)) {
-                result = result.replace(placeholder, entry.actual);
+    // Pass 1: Pre-parse a body line, turning &ARG operands into ALA slot numbers
+    private MDTLine compileLine(MNTEntry entry, String opcode, String op1, String op2) {
+        List<ALAEntry> ala = entry.ala;
+        String[] operands = {op1, op2};
+        int[] slots = {-1, -1};
+        for (int i = 0; i < operands.length; i++) {
+            if (operands[i] == null) continue;
+            for (int a = 0; a < ala.size(); a++) {
+                if (ala.get(a).dummy.equals(operands[i])) {
+                    slots[i] = a;
+                    operands[i] = null;
+                    break;
+                }
             }
         }
-        return result;
+        // MDT text shares the pool's String instances instead of keeping its own copies
+        for (int i = 0; i < operands.length; i++) {
+            if (operands[i] != null) operands[i] = pool.name(pool.intern(operands[i]));
+        }
+        return new MDTLine(pool.name(pool.intern(opcode)), operands, slots);
     }
 
     private static String formatOperands(String op1, String op2) {
@@ -199,7 +565,7 @@ public class MacroAssembler {
         return op1 + ", " + op2;
     }
 
-    private static void printTables(boolean pass1Only) {
+    private void printTables(boolean pass1Only) {
         System.out.println("\n--- TABLES ---");
         
         // MNT
@@ -220,15 +586,17 @@ public class MacroAssembler {
             System.out.printf("| %-10d | %-25s |\n", i, mdt.get(i));
         }
 
-        // ALA
-        System.out.println("\nALA (Argument List Array)");
-        System.out.println("-------------------------------------------");
-        System.out.printf("| %-10s | %-15s | %-15s |\n", "Index", "Dummy Arg", "Actual Arg");
-        System.out.println("-------------------------------------------");
-        for (int i = 0; i < ala.size(); i++) {
-            ALAEntry e = ala.get(i);
-            System.out.printf("| #%-9d | %-15s | %-15s |\n", (i+1), e.dummy, e.actual);
+        // ALA (one block per macro, actuals from its last call)
+        for (MNTEntry m : mnt.values()) {
+            System.out.println("\nALA (Argument List Array)" + (mnt.size() > 1 ? " - " + m.name : ""));
+            System.out.println("-------------------------------------------");
+            System.out.printf("| %-10s | %-15s | %-15s |\n", "Index", "Dummy Arg", "Actual Arg");
+            System.out.println("-------------------------------------------");
+            for (int i = 0; i < m.ala.size(); i++) {
+                ALAEntry e = m.ala.get(i);
+                System.out.printf("| #%-9d | %-15s | %-15s |\n", (i+1), e.dummy, e.actual);
+            }
+            System.out.println("-------------------------------------------");
         }
-        System.out.println("-------------------------------------------");
     }
 }
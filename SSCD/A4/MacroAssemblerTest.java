@@ -0,0 +1,65 @@
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Checks for nested macro definitions and source parsing (no test framework: run it, exit status 1 on a failure)
+//   javac -sourcepath .:../common MacroAssemblerTest.java && java -cp .:../common MacroAssemblerTest
+public class MacroAssemblerTest {
+
+    static int failures = 0;
+
+    public static void main(String[] args) {
+        innerMacroUsesOwnParameters();
+        innerMacroUsingOuterParameterIsRejected();
+        labelledCallWithOneOperand();
+        System.out.println(failures == 0 ? "All tests passed" : failures + " test(s) failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    // OUTER passes its argument to INNER, which substitutes it through its own parameter
+    static void innerMacroUsesOwnParameters() {
+        String text = expand(
+                "MACRO", "OUTER &A", "MACRO", "INNER &B", "ADD AREG &B", "MEND", "INNER &A", "MEND",
+                "START 100", "OUTER X", "END");
+        check("inner macro uses its own parameter", text.contains("ADD AREG, X") && !text.contains("&"), text);
+    }
+
+    // INNER is defined at Pass 1, outside any call of OUTER, so &A has no value there
+    static void innerMacroUsingOuterParameterIsRejected() {
+        try {
+            String text = expand(
+                    "MACRO", "OUTER &A", "MACRO", "INNER &B", "ADD AREG &A", "MEND", "INNER &A", "MEND",
+                    "START 100", "OUTER X", "END");
+            check("outer parameter in inner body is rejected", false, text);
+        } catch (IllegalArgumentException e) {
+            check("outer parameter in inner body is rejected",
+                    e.getMessage().contains("&A") && e.getMessage().contains("OUTER"), e.getMessage());
+        }
+    }
+
+    // "L1 INCR X" has three tokens; L1 is the label because INCR is a macro defined above it
+    static void labelledCallWithOneOperand() {
+        String[][] source = MacroAssembler.readSource(List.of(
+                "MACRO", "INCR &A", "ADD AREG &A", "MEND", "START 100", "L1 INCR X", "END"));
+        String[] call = source[5];
+        check("labelled one-operand macro call", "L1".equals(call[0]) && "INCR".equals(call[1])
+                && "X".equals(call[2]) && call[3] == null, String.join(" ", String.valueOf(call[0]), call[1], call[2]));
+        String text = expand("MACRO", "INCR &A", "ADD AREG &A", "MEND", "START 100", "L1 INCR X", "END");
+        check("labelled call expands with its label", text.contains("L1") && text.contains("ADD AREG, X"), text);
+    }
+
+    static String expand(String... lines) {
+        String[][] source = MacroAssembler.readSource(List.of(lines));
+        MacroAssembler m = new MacroAssembler();
+        m.markers = false;
+        m.pass1(source);
+        return new String(m.expandToBytes(source), StandardCharsets.US_ASCII);
+    }
+
+    static void check(String name, boolean ok, String detail) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            System.out.println("  got: " + detail);
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Precompiled macro library: MNT, tokenized MDT and formal parameters in one binary file, so a
+// shared set of definitions is parsed once and every job that uses it just loads the tables.
+//
+// File layout (big-endian):
+//   "MLB" + version byte
+//   [strings:4][macros:4][params:4][lines:4]
+//   strings:  [length:2][ASCII bytes]          names, opcodes, literal operands, dummy args
+//   macros:   [name:4][mdtIndex:4][argCount:4][firstParam:4]
+//   params:   [dummy:4]                         formal parameters, argCount per macro from firstParam
+//   lines:    [opcode:4][operands:4][operand0:4][operand1:4][slot0:4][slot1:4]
+// Strings are referenced by index (-1 = null); slots are the MDTLine parameter slots (-1 = literal).
+//
+// Loading maps the file and decodes it in one sequential pass: strings are interned into the
+// SymbolPool straight from the mapping, lines are rebuilt as heap MDTLine objects without any text
+// parsing, and the printable MDT text is derived from the tokens. The mapping is not kept; the
+// tables live on the heap like definitions read from source.
+class MacroLibrary {
+    static final byte[] MAGIC = {'M', 'L', 'B'};
+    static final byte VERSION = 1;
+
+    // Writes every macro currently in asm's MNT
+    static void save(MacroAssembler asm, String file) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        List<MacroAssembler.MNTEntry> macros = new ArrayList<>(asm.mnt.values());
+        List<Integer> params = new ArrayList<>();
+        List<MacroAssembler.MDTLine> lines = new ArrayList<>();
+        int[] macroIndex = new int[macros.size()];
+        int[] firstParam = new int[macros.size()];
+
+        for (int m = 0; m < macros.size(); m++) {
+            MacroAssembler.MNTEntry e = macros.get(m);
+            id(strings, e.name);
+            firstParam[m] = params.size();
+            for (MacroAssembler.ALAEntry a : e.ala) params.add(id(strings, a.dummy));
+
+            // Prototype through MEND, renumbered to the library's own MDT
+            macroIndex[m] = lines.size();
+            for (int i = e.mdtIndex; ; i++) {
+                MacroAssembler.MDTLine line = asm.mdtCode.get(i);
+                lines.add(line);
+                id(strings, line.opcode);
+                for (String op : line.operands) id(strings, op);
+                if (line.isMend()) break;
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(strings.size());
+            out.writeInt(macros.size());
+            out.writeInt(params.size());
+            out.writeInt(lines.size());
+
+            for (String s : strings.keySet()) {
+                byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+                out.writeShort(b.length);
+                out.write(b);
+            }
+            for (int m = 0; m < macros.size(); m++) {
+                MacroAssembler.MNTEntry e = macros.get(m);
+                out.writeInt(strings.get(e.name));
+                out.writeInt(macroIndex[m]);
+                out.writeInt(e.argCount);
+                out.writeInt(firstParam[m]);
+            }
+            for (int p : params) out.writeInt(p);
+            for (MacroAssembler.MDTLine line : lines) {
+                out.writeInt(strings.get(line.opcode));
+                out.writeInt(line.operands.length);
+                for (int i = 0; i < 2; i++) out.writeInt(i < line.operands.length ? id(strings, line.operands[i]) : -1);
+                for (int i = 0; i < 2; i++) out.writeInt(i < line.slots.length ? line.slots[i] : -1);
+            }
+        }
+    }
+
+    private static int id(Map<String, Integer> strings, String s) {
+        if (s == null) return -1;
+        Integer id = strings.get(s);
+        if (id == null) {
+            id = strings.size();
+            strings.put(s, id);
+        }
+        return id;
+    }
+
+    // Appends the library's macros to asm's MNT/MDT (mdtIndex is rebased onto the current MDT)
+    static void load(MacroAssembler asm, String file) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            ByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            byte[] head = new byte[4];
+            in.get(head);
+            if (head[0] != MAGIC[0] || head[1] != MAGIC[1] || head[2] != MAGIC[2])
+                throw new IOException("not a macro library: " + file);
+            if (head[3] != VERSION)
+                throw new IOException("unsupported macro library version " + head[3] + ": " + file);
+
+            int stringCount = in.getInt();
+            int macroCount = in.getInt();
+            int paramCount = in.getInt();
+            int lineCount = in.getInt();
+
+            SymbolPool pool = asm.pool;
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                int len = in.getShort() & 0xFFFF;
+                int at = in.position();
+                strings[i] = pool.name(pool.intern(in, at, at + len));
+                in.position(at + len);
+            }
+
+            int base = asm.mdtCode.size();
+            MacroAssembler.MNTEntry[] macros = new MacroAssembler.MNTEntry[macroCount];
+            int[] firstParam = new int[macroCount];
+            for (int m = 0; m < macroCount; m++) {
+                String name = strings[in.getInt()];
+                int mdtIndex = base + in.getInt();
+                macros[m] = new MacroAssembler.MNTEntry(name, mdtIndex, in.getInt());
+                firstParam[m] = in.getInt();
+            }
+            int[] params = new int[paramCount];
+            for (int i = 0; i < paramCount; i++) params[i] = in.getInt();
+            for (int m = 0; m < macroCount; m++) {
+                for (int a = 0; a < macros[m].argCount; a++) {
+                    macros[m].ala.add(new MacroAssembler.ALAEntry(a, strings[params[firstParam[m] + a]]));
+                }
+            }
+
+            for (int i = 0; i < lineCount; i++) {
+                String opcode = strings[in.getInt()];
+                int n = in.getInt();
+                int op0 = in.getInt(), op1 = in.getInt();
+                int slot0 = in.getInt(), slot1 = in.getInt();
+                String[] operands = Arrays.copyOf(new String[] {str(strings, op0), str(strings, op1)}, n);
+                int[] slots = Arrays.copyOf(new int[] {slot0, slot1}, n);
+                asm.mdtCode.add(new MacroAssembler.MDTLine(opcode, operands, slots));
+                asm.mdt.add(text(opcode, operands, slots));
+            }
+
+            for (MacroAssembler.MNTEntry e : macros) asm.define(e);
+            asm.linkCalls();
+        }
+    }
+
+    private static String str(String[] strings, int id) {
+        return (id < 0) ? null : strings[id];
+    }
+
+    // Printable MDT line, same form Pass 1 produces ("ADD AREG, #1")
+    private static String text(String opcode, String[] operands, int[] slots) {
+        if (operands.length == 0) return opcode;
+        String[] shown = new String[2];
+        for (int i = 0; i < operands.length && i < 2; i++) {
+            shown[i] = (slots[i] >= 0) ? "#" + (slots[i] + 1) : operands[i];
+        }
+        String ops;
+        if (shown[0] == null && shown[1] == null) ops = "";
+        else if (shown[1] == null) ops = shown[0];
+        else ops = shown[0] + ", " + shown[1];
+        return opcode + " " + ops;
+    }
+}
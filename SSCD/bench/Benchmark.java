@@ -0,0 +1,369 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Micro-benchmarks for the SSCD tools: lexing, Pass 1 (A1), Pass 2 (A2), macro Pass 1 (A3) and
+// macro expansion (A4) on synthetic inputs from 1K to 10M lines.
+//
+// Each measurement is a batch of invocations long enough to time reliably (small sizes repeat the
+// operation), preceded by warm-up batches so the JIT has compiled the hot paths. Per run it records
+// time per invocation, throughput (lines/s) and allocation (bytes allocated by the benchmark
+// thread, from com.sun.management.ThreadMXBean).
+//
+// CSV has the same leading columns as HPC/A2 results.csv (n,method,threads,time), one row per run,
+// so the plotting scripts can group and average it the same way.
+public class Benchmark {
+
+    static long[] sizes = {1_000, 10_000, 100_000, 1_000_000};
+    static int runs = 3;            // measured runs per (method, n)
+    static int warmup = 2;          // warm-up batches per (method, n)
+    static long batchLines = 1_000_000; // lines per measured batch (at least one invocation)
+    static String csvFile = "results.csv";
+    static Set<String> only = null; // methods to run (null = all)
+
+    static volatile long blackhole; // keeps results alive so the JIT cannot drop the work
+
+    // One benchmarked operation; prepare() builds the input for n lines outside the timing
+    abstract static class Bench {
+        final String name;
+
+        Bench(String name) {
+            this.name = name;
+        }
+
+        abstract void prepare(int n) throws IOException;
+
+        abstract void run() throws IOException;
+
+        void release() {}
+    }
+
+    public static void main(String[] args) {
+        // java Benchmark [--sizes 1000,10000,...] [--runs R] [--warmup W] [--only lex,pass1,...] [--csv file]
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--sizes") && i + 1 < args.length) {
+                sizes = Arrays.stream(args[++i].split(",")).mapToLong(Long::parseLong).toArray();
+            } else if (args[i].equals("--runs") && i + 1 < args.length) {
+                runs = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--warmup") && i + 1 < args.length) {
+                warmup = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--only") && i + 1 < args.length) {
+                only = new HashSet<>(Arrays.asList(args[++i].split(",")));
+            } else if (args[i].equals("--csv") && i + 1 < args.length) {
+                csvFile = args[++i];
+            } else {
+                System.err.println("unknown option " + args[i]);
+                return;
+            }
+        }
+
+        List<Bench> benches = Arrays.asList(new Lex(), new PassOne(), new PassTwoLine(), new PassTwoOperand(),
+                                            new MacroDefinitions(), new MacroExpansion());
+
+        try (PrintWriter csv = new PrintWriter(new FileWriter(csvFile))) {
+            csv.println("n,method,threads,time,lines_per_sec,alloc_mb_per_sec,alloc_bytes_per_line");
+            System.out.printf("%-16s | %-10s | %-12s | %-14s | %-12s | %-10s%n",
+                              "METHOD", "N", "TIME (s)", "LINES/s", "ALLOC MB/s", "B/LINE");
+            System.out.println("----------------------------------------------------------------------------------------");
+
+            for (Bench b : benches) {
+                if (only != null && !only.contains(b.name)) continue;
+                for (long n : sizes) {
+                    measure(b, (int) n, csv);
+                }
+            }
+        } catch (IOException e) { e.printStackTrace(); }
+    }
+
+    static void measure(Bench b, int n, PrintWriter csv) throws IOException {
+        b.prepare(n);
+        int invocations = (int) Math.max(1, batchLines / n);
+
+        for (int w = 0; w < warmup; w++) {
+            for (int i = 0; i < invocations; i++) b.run();
+        }
+
+        for (int r = 0; r < runs; r++) {
+            long alloc = allocatedBytes();
+            long t = System.nanoTime();
+            for (int i = 0; i < invocations; i++) b.run();
+            long ns = System.nanoTime() - t;
+            alloc = allocatedBytes() - alloc;
+
+            double time = ns / 1e9 / invocations;          // seconds per invocation
+            double linesPerSec = n / time;
+            double allocRate = alloc / (ns / 1e9) / (1 << 20);
+            double bytesPerLine = (double) alloc / invocations / n;
+            csv.printf(Locale.ROOT, "%d,%s,%d,%.6f,%.0f,%.1f,%.2f%n", n, b.name, 1, time, linesPerSec, allocRate, bytesPerLine);
+            System.out.printf(Locale.ROOT, "%-16s | %-10d | %-12.6f | %-14.0f | %-12.1f | %-10.2f%n",
+                              b.name, n, time, linesPerSec, allocRate, bytesPerLine);
+        }
+        csv.flush();
+        b.release();
+    }
+
+    // Bytes allocated so far by this thread (-1 parts cancel out if the JVM does not support it)
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (mx instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    // Writer that counts and drops the output
+    static ObjectCodeWriter discard() {
+        return new ObjectCodeWriter(new ObjectCodeWriter.Sink() {
+            public void write(byte[] b, int off, int len) {
+                blackhole += len;
+            }
+        });
+    }
+
+    // ================= SYNTHETIC INPUTS =================
+    // Same shape as a real program: START, instructions using S<k> operands (mostly forward
+    // references), one DC per symbol, END. Symbol count grows with n up to 500.
+
+    static final String[] MNEMONICS = {"ADD", "SUB", "MULT", "MOVER", "MOVEM"};
+    static final String[] REGISTERS = {"AREG", "BREG", "CREG", "DREG"};
+
+    static int symbolCount(int n) {
+        return Math.max(1, Math.min(500, n / 10));
+    }
+
+    static byte[] sourceText(int n) {
+        Random rnd = new Random(n);
+        int symbols = symbolCount(n);
+        StringBuilder sb = new StringBuilder(n * 20);
+        sb.append("START 100 -\n");
+        for (int i = 0; i < n - symbols - 2; i++) {
+            sb.append(MNEMONICS[rnd.nextInt(MNEMONICS.length)]).append(' ')
+              .append(REGISTERS[rnd.nextInt(2)]).append(" S").append(rnd.nextInt(symbols)).append('\n');
+        }
+        for (int k = 0; k < symbols; k++) {
+            sb.append('S').append(k).append(" DC ").append(k).append(" -\n");
+        }
+        sb.append("END - -\n");
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // ================= BENCHMARKS =================
+
+    // Lexer only: tokenizing every line of the source
+    static class Lex extends Bench {
+        byte[] source;
+
+        Lex() {
+            super("lex");
+        }
+
+        void prepare(int n) {
+            source = sourceText(n);
+        }
+
+        void run() throws IOException {
+            Lexer lx = new Lexer();
+            long tokens = 0;
+            try (LineSource src = new StreamSource(new ByteArrayInputStream(source))) {
+                while (src.next(lx)) tokens += lx.count;
+            }
+            blackhole += tokens;
+        }
+
+        void release() {
+            source = null;
+        }
+    }
+
+    // a1.processPassOne: LC, SYMTAB, forward-reference fixups, IC text (streamed to a discarding sink)
+    static class PassOne extends Bench {
+        byte[] source;
+
+        PassOne() {
+            super("pass1");
+        }
+
+        void prepare(int n) {
+            source = sourceText(n);
+        }
+
+        void run() throws IOException {
+            a1 asm = new a1();
+            asm.icSink = discard();
+            try (LineSource src = new StreamSource(new ByteArrayInputStream(source))) {
+                asm.processPassOne(src);
+            }
+            asm.icSink.flush();
+            blackhole += asm.LC;
+        }
+
+        void release() {
+            source = null;
+        }
+    }
+
+    // Text IC lines as Pass 1 prints them: IS with symbol / constant operands, DC, directives
+    static List<ICLine> icLines(int n) {
+        Random rnd = new Random(n);
+        int symbols = symbolCount(n);
+        List<ICLine> ic = new ArrayList<>(n);
+        ic.add(new ICLine("-", "AD", "01", "-", "C,100"));
+        for (int i = 1; i < n - 1; i++) {
+            String lc = String.valueOf(100 + i);
+            int kind = rnd.nextInt(10);
+            if (kind < 7) {
+                ic.add(new ICLine(lc, "IS", "0" + (1 + rnd.nextInt(5)), String.valueOf(1 + rnd.nextInt(2)), "S," + (1 + rnd.nextInt(symbols))));
+            } else if (kind < 9) {
+                ic.add(new ICLine(lc, "IS", "0" + (1 + rnd.nextInt(5)), "1", "C," + rnd.nextInt(1000)));
+            } else {
+                ic.add(new ICLine(lc, "DL", "01", "-", "C," + rnd.nextInt(1000)));
+            }
+        }
+        ic.add(new ICLine("-", "AD", "02", "-", "-"));
+        return ic;
+    }
+
+    static AssemblerPass2 pass2(int n) {
+        AssemblerPass2 p = new AssemblerPass2();
+        for (int k = 1; k <= symbolCount(n); k++) p.symtab.put(k, 100 + k);
+        p.out = discard();
+        return p;
+    }
+
+    // AssemblerPass2.processLine: the text IC path, one line at a time
+    static class PassTwoLine extends Bench {
+        List<ICLine> ic;
+        AssemblerPass2 pass2;
+
+        PassTwoLine() {
+            super("pass2_line");
+        }
+
+        void prepare(int n) {
+            ic = icLines(n);
+            pass2 = pass2(n);
+        }
+
+        void run() {
+            for (ICLine line : ic) pass2.processLine(line);
+            pass2.out.flush();
+        }
+
+        void release() {
+            ic = null;
+        }
+    }
+
+    // AssemblerPass2.resolveOperand on the operand field alone
+    static class PassTwoOperand extends Bench {
+        String[] operands;
+        AssemblerPass2 pass2;
+
+        PassTwoOperand() {
+            super("pass2_operand");
+        }
+
+        void prepare(int n) {
+            List<ICLine> ic = icLines(n);
+            operands = new String[ic.size()];
+            for (int i = 0; i < operands.length; i++) operands[i] = ic.get(i).op2;
+            pass2 = pass2(n);
+        }
+
+        void run() {
+            long sum = 0;
+            for (String op : operands) sum += pass2.resolveOperand(op);
+            blackhole += sum;
+        }
+
+        void release() {
+            operands = null;
+        }
+    }
+
+    // MacroPass1.pass1: n lines of macro definitions (MACRO, prototype, 3 body lines, MEND)
+    static class MacroDefinitions extends Bench {
+        String[][] source;
+
+        MacroDefinitions() {
+            super("macro_pass1");
+        }
+
+        void prepare(int n) {
+            source = new String[n][];
+            for (int i = 0; i < n; i++) {
+                int macro = i / 6;
+                switch (i % 6) {
+                    case 0: source[i] = new String[] {null, "MACRO", null, null}; break;
+                    case 1: source[i] = new String[] {null, "M" + macro, "&A", "&B"}; break;
+                    case 2: source[i] = new String[] {null, "MOVER", "AREG", "&A"}; break;
+                    case 3: source[i] = new String[] {null, "ADD", "AREG", "&B"}; break;
+                    case 4: source[i] = new String[] {null, "MOVEM", "AREG", "&A"}; break;
+                    default: source[i] = new String[] {null, "MEND", null, null}; break;
+                }
+            }
+        }
+
+        void run() {
+            MacroPass1.mdt.clear();
+            MacroPass1.mnt.clear();
+            MacroPass1.pass1(source);
+            blackhole += MacroPass1.mdt.size();
+        }
+
+        void release() {
+            source = null;
+            MacroPass1.mdt.clear();
+            MacroPass1.mnt.clear();
+        }
+    }
+
+    // MacroAssembler expansion (expandSource -> expandMacro): n source lines, a quarter of them
+    // macro calls with varying actuals, 8 macros of which half call another macro. The expansion
+    // cache is off so every call is expanded.
+    static class MacroExpansion extends Bench {
+        String[][] source;
+        MacroAssembler asm;
+
+        MacroExpansion() {
+            super("macro_expand");
+        }
+
+        void prepare(int n) {
+            List<String[]> defs = new ArrayList<>();
+            for (int m = 0; m < 8; m++) {
+                defs.add(new String[] {null, "MACRO", null, null});
+                defs.add(new String[] {null, "INC" + m, "&X", "&Y"});
+                defs.add(new String[] {null, "MOVER", "AREG", "&X"});
+                defs.add(new String[] {null, "ADD", "AREG", "&Y"});
+                if (m % 2 == 1) defs.add(new String[] {null, "INC" + (m - 1), "&Y", "&X"});
+                defs.add(new String[] {null, "MOVEM", "AREG", "&X"});
+                defs.add(new String[] {null, "MEND", null, null});
+            }
+            asm = new MacroAssembler();
+            asm.markers = false;
+            asm.cache = null;
+            asm.pass1(defs.toArray(new String[0][]));
+
+            Random rnd = new Random(n);
+            source = new String[n][];
+            for (int i = 0; i < n; i++) {
+                String x = "S" + rnd.nextInt(500), y = "S" + rnd.nextInt(500);
+                source[i] = (i % 4 == 0) ? new String[] {null, "INC" + rnd.nextInt(8), x, y}
+                                         : new String[] {null, MNEMONICS[rnd.nextInt(MNEMONICS.length)], "BREG", x};
+            }
+        }
+
+        void run() {
+            ObjectCodeWriter w = discard();
+            asm.expandSource(source, w, false);
+            w.flush();
+        }
+
+        void release() {
+            source = null;
+            asm = null;
+        }
+    }
+}
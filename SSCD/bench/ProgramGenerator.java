@@ -0,0 +1,142 @@
+import java.io.*;
+import java.util.*;
+
+// Seeded generator of valid assembly programs for stress and scaling tests.
+// The same options and seed always give the same program. Output is streamed line by line, so
+// memory stays O(symbols + macros) and sizes of hundreds of millions of lines are fine.
+//
+// Program layout:
+//   macro definitions (MACRO / prototype / body / MEND), if --macros > 0
+//   START 100
+//   body: IS statements, DL statements (DC / DS), LTORG and macro calls
+//   STOP, END
+//
+// Every symbol S<k> is defined exactly once, as the label of a body line; definitions are spread
+// evenly over the body. An operand refers to a symbol that is not defined yet (forward reference)
+// with probability --forward, otherwise to one already defined. Macro M<k> calls M<k-1> from its
+// body unless k is a multiple of --depth, so calls nest up to --depth levels. With --literals an
+// IS operand is a literal ='n' instead (n < 100, so literals repeat within a pool); --ltorg places
+// the open pool in mid-program, END places the rest.
+//
+// Without macros the output goes straight into a1 (A1); with macros it is input for the macro
+// processor (A4) or toolchain/BuildDriver.
+public class ProgramGenerator {
+
+    static final String[] IS_MNEMONICS = {"ADD", "SUB", "MULT", "MOVER", "MOVEM"};
+    static final String[] REGISTERS = {"AREG", "BREG", "CREG", "DREG"};
+
+    long lines = 1000;          // total lines, definitions and START / STOP / END included
+    long seed = 1;
+    int symbols = -1;           // -1 = min(500, body / 10)
+    double dl = 0.1;            // share of body lines that are DC / DS
+    double forward = 0.5;       // share of symbol operands that are forward references
+    int macros = 0;             // macro definitions
+    int depth = 1;              // macro call nesting (1 = bodies call no other macro)
+    double calls = -1;          // share of body lines that are macro calls (-1 = 0.1 with macros)
+    double literals = 0;        // share of IS operands that are literals
+    double ltorg = 0;           // share of body lines that are LTORG
+
+    private Random rnd;
+
+    public static void main(String[] args) {
+        // java ProgramGenerator [--lines N] [--seed S] [--symbols K] [--dl F] [--forward F]
+        //                       [--macros M] [--depth D] [--calls F] [--literals F] [--ltorg F]
+        //                       [--out file.asm]
+        ProgramGenerator g = new ProgramGenerator();
+        String outFile = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "--lines":   g.lines = Long.parseLong(v); break;
+                case "--seed":    g.seed = Long.parseLong(v); break;
+                case "--symbols": g.symbols = Integer.parseInt(v); break;
+                case "--dl":      g.dl = Double.parseDouble(v); break;
+                case "--forward": g.forward = Double.parseDouble(v); break;
+                case "--macros":  g.macros = Integer.parseInt(v); break;
+                case "--depth":   g.depth = Integer.parseInt(v); break;
+                case "--calls":   g.calls = Double.parseDouble(v); break;
+                case "--literals": g.literals = Double.parseDouble(v); break;
+                case "--ltorg":   g.ltorg = Double.parseDouble(v); break;
+                case "--out":     outFile = v; break;
+                default:
+                    System.err.println("unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        try (ObjectCodeWriter w = (outFile == null) ? ObjectCodeWriter.stdout() : ObjectCodeWriter.file(outFile)) {
+            g.generate(w);
+        } catch (IOException | IllegalArgumentException e) { e.printStackTrace(); }
+    }
+
+    // Lines per macro definition: MACRO, prototype, 3 body lines (+1 nested call), MEND
+    int definitionLines(int k) {
+        return nestedCall(k) ? 7 : 6;
+    }
+
+    boolean nestedCall(int k) {
+        return depth > 1 && k % depth != 0;
+    }
+
+    void generate(ObjectCodeWriter w) {
+        rnd = new Random(seed);
+        long definitions = 0;
+        for (int k = 0; k < macros; k++) definitions += definitionLines(k);
+        long body = lines - definitions - 3; // START, STOP, END
+        if (body < 1) throw new IllegalArgumentException("--lines " + lines + " leaves no room for a body");
+        int symbolCount = (symbols >= 0) ? symbols : (int) Math.max(1, Math.min(500, body / 10));
+        if (symbolCount < 1) throw new IllegalArgumentException("at least one symbol is needed");
+        if (symbolCount > body) throw new IllegalArgumentException(symbolCount + " symbols need at least as many body lines");
+        double callShare = (macros == 0) ? 0 : (calls >= 0 ? calls : 0.1);
+
+        for (int k = 0; k < macros; k++) writeDefinition(w, k);
+
+        w.str("START 100 -").newline();
+        int defined = 0;
+        for (long i = 0; i < body; i++) {
+            // Symbol definitions are spread evenly: after line i, (i+1)*K/body symbols exist
+            boolean labeled = (i + 1) * symbolCount / body > defined;
+            if (labeled) w.ch('S').dec(defined).ch(' ');
+
+            double r = rnd.nextDouble();
+            if (r < dl) {
+                if (rnd.nextBoolean()) w.str("DC ").dec(rnd.nextInt(1000)).str(" -");
+                else w.str("DS ").dec(1 + rnd.nextInt(4)).str(" -");
+            } else if (r < dl + callShare && !labeled) {
+                w.ch('M').dec(rnd.nextInt(macros)).ch(' ');
+                operand(w, defined, symbolCount).ch(' ');
+                operand(w, defined, symbolCount);
+            } else if (r < dl + callShare + ltorg && !labeled) {
+                w.str("LTORG - -");
+            } else {
+                w.str(IS_MNEMONICS[rnd.nextInt(IS_MNEMONICS.length)]).ch(' ')
+                 .str(REGISTERS[rnd.nextInt(REGISTERS.length)]).ch(' ');
+                // No draw when --literals is 0, so existing seeds give the same programs
+                if (literals > 0 && rnd.nextDouble() < literals) w.str("='").dec(rnd.nextInt(100)).ch('\'');
+                else operand(w, defined, symbolCount);
+            }
+            w.newline();
+            if (labeled) defined++;
+        }
+        w.str("STOP - -").newline();
+        w.str("END - -").newline();
+        w.flush();
+    }
+
+    // A symbol operand: forward (not yet defined) with probability `forward`, else backward
+    ObjectCodeWriter operand(ObjectCodeWriter w, int defined, int symbolCount) {
+        boolean fwd = (defined == 0) || (defined < symbolCount && rnd.nextDouble() < forward);
+        int k = fwd ? defined + rnd.nextInt(symbolCount - defined) : rnd.nextInt(defined);
+        return w.ch('S').dec(k);
+    }
+
+    void writeDefinition(ObjectCodeWriter w, int k) {
+        w.str("MACRO").newline();
+        w.ch('M').dec(k).str(" &X &Y").newline();
+        w.str("MOVER AREG &X").newline();
+        w.str("ADD AREG &Y").newline();
+        if (nestedCall(k)) w.ch('M').dec(k - 1).str(" &Y &X").newline();
+        w.str("MOVEM AREG &X").newline();
+        w.str("MEND").newline();
+    }
+}
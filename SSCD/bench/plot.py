@@ -0,0 +1,43 @@
+import pandas as pd
+import matplotlib.pyplot as plt
+
+# Load data
+try:
+    df = pd.read_csv("results.csv")
+except FileNotFoundError:
+    print("Error: 'results.csv' not found. Run the Java benchmark (java Benchmark) first.")
+    exit()
+
+# Average the runs (groupby n, method, AND threads)
+avg_df = df.groupby(["n", "method", "threads"])[["time", "lines_per_sec", "alloc_bytes_per_line"]].mean().reset_index()
+
+markers = ["o", "s", "^", "v", "D", "x"]
+
+# --- Plotting ---
+fig, (ax1, ax2) = plt.subplots(1, 2, figsize=(14, 6))
+
+for i, method in enumerate(avg_df["method"].unique()):
+    data = avg_df[avg_df["method"] == method]
+    ax1.plot(data["n"], data["lines_per_sec"], marker=markers[i % len(markers)], linestyle="-", label=method)
+    ax2.plot(data["n"], data["alloc_bytes_per_line"], marker=markers[i % len(markers)], linestyle="--", label=method)
+
+# Formatting
+ax1.set_xscale("log")
+ax1.set_yscale("log")
+ax1.set_xlabel("Number of source lines (n)", fontsize=12)
+ax1.set_ylabel("Throughput (lines/s)", fontsize=12)
+ax1.set_title("SSCD Tools: Throughput", fontsize=14, fontweight='bold')
+ax1.grid(True, which="both", linestyle="--", alpha=0.6)
+ax1.legend()
+
+ax2.set_xscale("log")
+ax2.set_xlabel("Number of source lines (n)", fontsize=12)
+ax2.set_ylabel("Allocation (bytes/line)", fontsize=12)
+ax2.set_title("SSCD Tools: Allocation", fontsize=14, fontweight='bold')
+ax2.grid(True, which="both", linestyle="--", alpha=0.6)
+ax2.legend()
+
+plt.tight_layout()
+plt.savefig("sscd_performance.png")
+print("Plot saved as 'sscd_performance.png'.")
+plt.show()
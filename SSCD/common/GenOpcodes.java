@@ -0,0 +1,193 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Generates Opcodes.java from the instruction set definition (isa.def).
+// Lookups become a switch on token length, then on the first character, then a direct compare of
+// the remaining characters: no hashing, no allocation, and only a few well-predicted branches.
+//
+// Usage (from SSCD/common):  java GenOpcodes.java isa.def > Opcodes.java
+public class GenOpcodes {
+
+    static class Op {
+        String name, cls;
+        int opcode, length, machine; // machine = -1 when the statement has no machine opcode
+    }
+
+    static class Reg {
+        String name;
+        int code;
+    }
+
+    static List<Op> ops = new ArrayList<>();
+    static List<Reg> regs = new ArrayList<>();
+
+    public static void main(String[] args) {
+        String def = (args.length > 0) ? args[0] : "isa.def";
+        try {
+            read(def);
+        } catch (IOException e) { e.printStackTrace(); return; }
+
+        PrintStream out = System.out;
+        out.println("import java.nio.ByteBuffer;");
+        out.println();
+        out.println("// GENERATED from " + Paths.get(def).getFileName() + " by GenOpcodes -- edit the definition file and regenerate:");
+        out.println("//     java GenOpcodes.java " + Paths.get(def).getFileName() + " > Opcodes.java");
+        out.println("//");
+        out.println("// Mnemonic lookup returns a packed int: class << 16 | IC opcode << 8 | length (words).");
+        out.println("// Register lookup returns the register code. Both return NONE for anything else.");
+        out.println("final class Opcodes {");
+        out.println("    static final int NONE = -1;");
+        out.println();
+        out.println("    // Packed mnemonic entries");
+        for (Op op : ops) {
+            out.println("    static final int " + op.name + " = " + packed(op) + ";");
+        }
+        out.println();
+        out.println("    // Definition order, for printing OPTAB / REGTAB");
+        out.println("    static final String[] MNEMONICS = {" + join(ops, o -> quote(o.name)) + "};");
+        out.println("    static final int[] PACKED = {" + join(ops, o -> o.name) + "};");
+        out.println("    static final String[] REGISTERS = {" + join(regs, r -> quote(r.name)) + "};");
+        out.println("    static final int[] REGISTER_CODES = {" + join(regs, r -> String.valueOf(r.code)) + "};");
+        out.println();
+        out.println("    static int cls(int packed) {");
+        out.println("        return packed >>> 16;");
+        out.println("    }");
+        out.println();
+        out.println("    static int opcode(int packed) {");
+        out.println("        return (packed >>> 8) & 0xFF;");
+        out.println("    }");
+        out.println();
+        out.println("    static int length(int packed) {");
+        out.println("        return packed & 0xFF;");
+        out.println("    }");
+        out.println();
+
+        out.println("    static int mnemonic(ByteBuffer b, int s, int e) {");
+        emitSwitch(out, names(ops, o -> o.name), names(ops, o -> o.name), "e - s", i -> "b.get(s" + (i == 0 ? "" : " + " + i) + ")");
+        out.println("    }");
+        out.println();
+        out.println("    static int mnemonic(String w) {");
+        emitSwitch(out, names(ops, o -> o.name), names(ops, o -> o.name), "w.length()", i -> "w.charAt(" + i + ")");
+        out.println("    }");
+        out.println();
+        out.println("    static int register(ByteBuffer b, int s, int e) {");
+        emitSwitch(out, names(regs, r -> r.name), names(regs, r -> String.valueOf(r.code)), "e - s", i -> "b.get(s" + (i == 0 ? "" : " + " + i) + ")");
+        out.println("    }");
+        out.println();
+        out.println("    static int register(String w) {");
+        emitSwitch(out, names(regs, r -> r.name), names(regs, r -> String.valueOf(r.code)), "w.length()", i -> "w.charAt(" + i + ")");
+        out.println("    }");
+        out.println();
+
+        out.println("    // Target machine opcode for an IS opcode (Pass 2)");
+        out.println("    static int machineOpcode(int opcode) {");
+        out.println("        switch (opcode) {");
+        for (Op op : ops) {
+            if (op.cls.equals("IS") && op.machine >= 0) {
+                out.println("            case " + op.opcode + ": return 0x" + hex(op.machine) + "; // " + op.name);
+            }
+        }
+        out.println("            default: return NONE;");
+        out.println("        }");
+        out.println("    }");
+        out.println("}");
+        out.flush();
+    }
+
+    static void read(String file) throws IOException {
+        Set<String> seen = new HashSet<>();
+        int lineNo = 0;
+        for (String line : Files.readAllLines(Paths.get(file))) {
+            lineNo++;
+            int hash = line.indexOf('#');
+            if (hash >= 0) line = line.substring(0, hash);
+            String[] f = line.trim().split("\\s+");
+            if (f[0].isEmpty()) continue;
+
+            if (f[0].equals("OP") && f.length == 6) {
+                Op op = new Op();
+                op.name = f[1];
+                op.cls = f[2];
+                op.opcode = Integer.parseInt(f[3]);
+                op.length = Integer.parseInt(f[4]);
+                op.machine = f[5].equals("--") ? -1 : Integer.parseInt(f[5], 16);
+                if (!op.cls.equals("IS") && !op.cls.equals("AD") && !op.cls.equals("DL")) {
+                    throw new IOException(file + ":" + lineNo + ": unknown class " + op.cls);
+                }
+                if (op.opcode > 0xFF || op.length > 0xFF) throw new IOException(file + ":" + lineNo + ": field out of range");
+                ops.add(op);
+            } else if (f[0].equals("REG") && f.length == 3) {
+                Reg r = new Reg();
+                r.name = f[1];
+                r.code = Integer.parseInt(f[2]);
+                regs.add(r);
+            } else {
+                throw new IOException(file + ":" + lineNo + ": expected OP or REG entry");
+            }
+            if (!seen.add(f[1])) throw new IOException(file + ":" + lineNo + ": duplicate " + f[1]);
+        }
+    }
+
+    // switch (length) { case n: switch (first char) { case c: compare rest; ... } }
+    static void emitSwitch(PrintStream out, List<String> keys, List<String> values, String length,
+                           java.util.function.IntFunction<String> charAt) {
+        TreeMap<Integer, TreeMap<Character, List<Integer>>> byLength = new TreeMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String k = keys.get(i);
+            byLength.computeIfAbsent(k.length(), n -> new TreeMap<>())
+                    .computeIfAbsent(k.charAt(0), c -> new ArrayList<>()).add(i);
+        }
+
+        out.println("        switch (" + length + ") {");
+        for (Map.Entry<Integer, TreeMap<Character, List<Integer>>> len : byLength.entrySet()) {
+            out.println("            case " + len.getKey() + ":");
+            out.println("                switch (" + charAt.apply(0) + ") {");
+            for (Map.Entry<Character, List<Integer>> first : len.getValue().entrySet()) {
+                out.println("                    case '" + first.getKey() + "':");
+                boolean returned = false;
+                for (int i : first.getValue()) {
+                    String k = keys.get(i);
+                    StringBuilder cond = new StringBuilder();
+                    for (int c = 1; c < k.length(); c++) {
+                        if (cond.length() > 0) cond.append(" && ");
+                        cond.append(charAt.apply(c)).append(" == '").append(k.charAt(c)).append('\'');
+                    }
+                    if (cond.length() == 0) {
+                        out.println("                        return " + values.get(i) + ";");
+                        returned = true;
+                    } else {
+                        out.println("                        if (" + cond + ") return " + values.get(i) + ";");
+                    }
+                }
+                if (!returned) out.println("                        return NONE;");
+            }
+            out.println("                }");
+            out.println("                return NONE;");
+        }
+        out.println("        }");
+        out.println("        return NONE;");
+    }
+
+    static String packed(Op op) {
+        return "ICRecord." + op.cls + " << 16 | " + op.opcode + " << 8 | " + op.length;
+    }
+
+    static <T> List<String> names(List<T> items, java.util.function.Function<T, String> f) {
+        List<String> r = new ArrayList<>();
+        for (T t : items) r.add(f.apply(t));
+        return r;
+    }
+
+    static <T> String join(List<T> items, java.util.function.Function<T, String> f) {
+        return String.join(", ", names(items, f));
+    }
+
+    static String quote(String s) {
+        return "\"" + s + "\"";
+    }
+
+    static String hex(int v) {
+        return String.format("%02X", v);
+    }
+}
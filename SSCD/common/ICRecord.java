@@ -0,0 +1,176 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// Binary intermediate code shared by Pass 1 (a1) and Pass 2 (AssemblerPass2).
+//
+// File layout:
+//   "ICB" + version byte
+//   IC records, 12 bytes each:  [class:1][opcode:1][reg:1][kind:1][lc:4][value:4]
+//                               (a pipelined Pass 1 also writes DEF records: lc = address, value = symbol id,
+//                               or literal id with kind LITERAL)
+//   one record with class END_OF_IC
+//   symbol section:             [count:4] then count x [id:4][address:4][length:4][nameLength:2][name]
+//                               (names for relocatable objects: globals and externals keep their names)
+//   literal section:            [count:4] then count x [id:4][address:4]
+//
+// Pass 2 decodes these with plain reads - no split(",") / parseInt per operand.
+class ICRecord {
+    static final int SIZE = 12;
+    static final byte[] MAGIC = {'I', 'C', 'B'};
+    static final byte VERSION = 3;
+
+    // Statement class
+    static final byte END_OF_IC = 0;
+    static final byte IS = 1;
+    static final byte AD = 2;
+    static final byte DL = 3;
+    static final byte DEF = 4;      // label (or literal) defined, so a streaming Pass 2 can resolve it early
+
+    // Operand kind
+    static final byte NONE = 0;
+    static final byte CONST = 1;
+    static final byte SYMBOL = 2;   // value = symbol id
+    static final byte LITERAL = 3;  // value = literal id
+
+    static final int NO_LC = -1;    // directives such as START have no address
+
+    byte cls, opcode, reg, kind;
+    int lc, value;
+
+    static byte classOf(String name) {
+        switch (name) {
+            case "IS": return IS;
+            case "AD": return AD;
+            case "DL": return DL;
+            default: throw new IllegalArgumentException("unknown statement class " + name);
+        }
+    }
+
+    static String className(byte cls) {
+        switch (cls) {
+            case IS: return "IS";
+            case AD: return "AD";
+            case DL: return "DL";
+            case DEF: return "DEF";
+            default: return "??";
+        }
+    }
+
+    // ================= WRITER =================
+    static class Writer implements Closeable {
+        private final DataOutputStream out;
+
+        Writer(OutputStream os) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+        }
+
+        void write(int cls, int opcode, int reg, int kind, int lc, int value) throws IOException {
+            out.writeByte(cls);
+            out.writeByte(opcode);
+            out.writeByte(reg);
+            out.writeByte(kind);
+            out.writeInt(lc);
+            out.writeInt(value);
+        }
+
+        // Records already encoded in the layout above (e.g. by a parallel Pass 1)
+        void records(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        // Terminates the IC and starts the symbol section
+        void beginSymbols(int count) throws IOException {
+            write(END_OF_IC, 0, 0, NONE, NO_LC, 0);
+            out.writeInt(count);
+        }
+
+        void symbol(int id, int address, int length, String name) throws IOException {
+            out.writeInt(id);
+            out.writeInt(address);
+            out.writeInt(length);
+            byte[] b = name.getBytes(StandardCharsets.US_ASCII);
+            out.writeShort(b.length);
+            out.write(b);
+        }
+
+        // After the symbols: LITTAB addresses (every literal is placed by LTORG / END)
+        void beginLiterals(int count) throws IOException {
+            out.writeInt(count);
+        }
+
+        void literal(int id, int address) throws IOException {
+            out.writeInt(id);
+            out.writeInt(address);
+        }
+
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    // ================= READER =================
+    static class Reader implements Closeable {
+        private final DataInputStream in;
+
+        Reader(InputStream is) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(is, 1 << 16));
+            byte[] head = new byte[4];
+            in.readFully(head);
+            if (head[0] != MAGIC[0] || head[1] != MAGIC[1] || head[2] != MAGIC[2])
+                throw new IOException("not a binary IC file");
+            if (head[3] != VERSION)
+                throw new IOException("unsupported IC version " + head[3]);
+        }
+
+        // Decodes the next record into r. Returns false once the IC is finished.
+        boolean next(ICRecord r) throws IOException {
+            r.cls = in.readByte();
+            r.opcode = in.readByte();
+            r.reg = in.readByte();
+            r.kind = in.readByte();
+            r.lc = in.readInt();
+            r.value = in.readInt();
+            return r.cls != END_OF_IC;
+        }
+
+        // Call after next() returned false: loads the symbol section (id -> address) into symtab.
+        // Pass 1 marks undefined symbols with address -1; those stay UNDEFINED in the table.
+        void readSymbols(IntTable symtab) throws IOException {
+            readSymbols(symtab, null);
+        }
+
+        // Same, and names.get(id) is the symbol's name when names is not null
+        void readSymbols(IntTable symtab, Map<Integer, String> names) throws IOException {
+            byte[] b = new byte[64];
+            for (int n = in.readInt(); n > 0; n--) {
+                int id = in.readInt();
+                int address = in.readInt();
+                in.readInt(); // length, not needed by Pass 2
+                int len = in.readUnsignedShort();
+                if (names == null) {
+                    in.skipNBytes(len);
+                } else {
+                    if (len > b.length) b = new byte[len];
+                    in.readFully(b, 0, len);
+                    names.put(id, new String(b, 0, len, StandardCharsets.US_ASCII));
+                }
+                if (address != -1) symtab.put(id, address);
+            }
+        }
+
+        // Call after readSymbols: loads the literal section (id -> address) into littab
+        void readLiterals(IntTable littab) throws IOException {
+            for (int n = in.readInt(); n > 0; n--) {
+                int id = in.readInt();
+                littab.put(id, in.readInt());
+            }
+        }
+
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
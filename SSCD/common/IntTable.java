@@ -0,0 +1,55 @@
+import java.util.Arrays;
+
+// ID -> int table backed by a growable int[].
+// Symbol and literal IDs are dense (1, 2, 3...), so the ID is used directly as the index:
+// no boxing, no hashing, no per-entry objects.
+class IntTable {
+    static final int UNDEFINED = Integer.MIN_VALUE;
+
+    private int[] values;
+    private int maxId = 0;
+    private int size = 0;   // IDs with a value
+
+    IntTable() {
+        this(16);
+    }
+
+    IntTable(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+        Arrays.fill(values, UNDEFINED);
+    }
+
+    void put(int id, int value) {
+        if (id >= values.length) {
+            int old = values.length;
+            values = Arrays.copyOf(values, Math.max(id + 1, old * 2));
+            Arrays.fill(values, old, values.length, UNDEFINED);
+        }
+        if (values[id] == UNDEFINED) size++;
+        values[id] = value;
+        if (id > maxId) maxId = id;
+    }
+
+    // Returns UNDEFINED for IDs that were never set
+    int get(int id) {
+        return (id >= 0 && id < values.length) ? values[id] : UNDEFINED;
+    }
+
+    boolean isDefined(int id) {
+        return get(id) != UNDEFINED;
+    }
+
+    int maxId() {
+        return maxId;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(values, UNDEFINED);
+        maxId = 0;
+        size = 0;
+    }
+}
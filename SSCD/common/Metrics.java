@@ -0,0 +1,174 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Counters and phase timers for the assembler / macro processor tools.
+// Updates are LongAdder adds (safe from any thread, no contention between units built in
+// parallel); hot loops keep plain local counts and add them once per phase. Names are dotted
+// ("pass1.forward_refs") and the summary is written as JSON or CSV:
+//
+//   try (Metrics.Phase p = metrics.phase("pass1")) { ... p.lines(n); }
+//   metrics.add("pass1.symtab_size", SYMTAB.size());
+//   metrics.write("metrics.json");
+//
+// With -Dsscd.jfr=true every phase is also a JFR event (sscd.Phase) for a running recording:
+//   java -Dsscd.jfr=true -XX:StartFlightRecording=filename=run.jfr ...
+// It is opt-in because loading the JFR event classes adds tens of milliseconds to a short run.
+class Metrics {
+    static final boolean JFR = Boolean.getBoolean("sscd.jfr");
+
+    // Accumulated time and lines of one phase name
+    static class Timer {
+        final LongAdder calls = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder lines = new LongAdder();
+    }
+
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, String[]> hitRates = new ConcurrentSkipListMap<>(); // name -> {hits, misses}
+
+    // Counter to keep in a field when it is bumped often
+    LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    void add(String name, long n) {
+        counter(name).add(n);
+    }
+
+    // hits / (hits + misses), computed from the two counters when the summary is written
+    void hitRate(String name, String hits, String misses) {
+        hitRates.put(name, new String[] {hits, misses});
+    }
+
+    double hitRate(String name) {
+        String[] c = hitRates.get(name);
+        long hits = get(c[0]), total = hits + get(c[1]);
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    long get(String name) {
+        LongAdder c = counters.get(name);
+        return (c == null) ? 0 : c.sum();
+    }
+
+    Phase phase(String name) {
+        return new Phase(name, timers.computeIfAbsent(name, k -> new Timer()));
+    }
+
+    // One timed run of a phase; close() records it
+    static class Phase implements AutoCloseable {
+        private final Timer timer;
+        private final PhaseEvent event;
+        private final long start;
+        private long lines;
+
+        Phase(String name, Timer timer) {
+            this.timer = timer;
+            event = JFR ? PhaseEvent.begin(name) : null;
+            start = System.nanoTime();
+        }
+
+        // Lines (or records) processed in this run, for lines/sec
+        void lines(long n) {
+            lines += n;
+        }
+
+        public void close() {
+            long ns = System.nanoTime() - start;
+            timer.calls.increment();
+            timer.nanos.add(ns);
+            timer.lines.add(lines);
+            if (event != null) event.end(lines);
+        }
+    }
+
+    @Name("sscd.Phase")
+    @Label("SSCD Phase")
+    @Category("SSCD")
+    static class PhaseEvent extends jdk.jfr.Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Lines")
+        long lines;
+
+        static PhaseEvent begin(String phase) {
+            PhaseEvent e = new PhaseEvent();
+            e.phase = phase;
+            e.begin();
+            return e;
+        }
+
+        void end(long lines) {
+            this.lines = lines;
+            commit();
+        }
+    }
+
+    // ================= OUTPUT =================
+
+    // JSON for *.json, CSV otherwise
+    void write(String file) {
+        try (ObjectCodeWriter w = ObjectCodeWriter.file(file)) {
+            if (file.endsWith(".json")) writeJson(w);
+            else writeCsv(w);
+        } catch (IOException e) { e.printStackTrace(); }
+    }
+
+    void writeJson(ObjectCodeWriter w) {
+        w.str("{").newline().str("  \"phases\": {");
+        String sep = "";
+        for (Map.Entry<String, Timer> e : timers.entrySet()) {
+            Timer t = e.getValue();
+            w.str(sep).newline().str("    \"").str(e.getKey()).str("\": {\"calls\": ").str(String.valueOf(t.calls.sum()))
+             .str(", \"ms\": ").str(ms(t)).str(", \"lines\": ").str(String.valueOf(t.lines.sum()))
+             .str(", \"lines_per_sec\": ").str(rate(t)).str("}");
+            sep = ",";
+        }
+        w.newline().str("  },").newline().str("  \"counters\": {");
+        sep = "";
+        for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+            w.str(sep).newline().str("    \"").str(e.getKey()).str("\": ").str(String.valueOf(e.getValue().sum()));
+            sep = ",";
+        }
+        for (String name : hitRates.keySet()) {
+            w.str(sep).newline().str("    \"").str(name).str("\": ").str(String.format(Locale.ROOT, "%.4f", hitRate(name)));
+            sep = ",";
+        }
+        w.newline().str("  }").newline().str("}").newline();
+        w.flush();
+    }
+
+    // metric,value rows: <phase>.calls / .ms / .lines / .lines_per_sec, then the counters
+    void writeCsv(ObjectCodeWriter w) {
+        w.str("metric,value").newline();
+        for (Map.Entry<String, Timer> e : timers.entrySet()) {
+            Timer t = e.getValue();
+            String p = e.getKey();
+            w.str(p).str(".calls,").str(String.valueOf(t.calls.sum())).newline();
+            w.str(p).str(".ms,").str(ms(t)).newline();
+            w.str(p).str(".lines,").str(String.valueOf(t.lines.sum())).newline();
+            w.str(p).str(".lines_per_sec,").str(rate(t)).newline();
+        }
+        counters.forEach((k, v) -> w.str(k).ch(',').str(String.valueOf(v.sum())).newline());
+        for (String name : hitRates.keySet()) {
+            w.str(name).ch(',').str(String.format(Locale.ROOT, "%.4f", hitRate(name))).newline();
+        }
+        w.flush();
+    }
+
+    private static String ms(Timer t) {
+        return String.format(Locale.ROOT, "%.3f", t.nanos.sum() / 1e6);
+    }
+
+    private static String rate(Timer t) {
+        long ns = t.nanos.sum();
+        return (ns == 0) ? "0" : String.format(Locale.ROOT, "%.0f", t.lines.sum() / (ns / 1e9));
+    }
+}
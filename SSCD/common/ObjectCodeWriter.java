@@ -0,0 +1,200 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// Batched ASCII output for assembler / macro processor listings.
+// Fields are formatted by hand into one reusable byte buffer (no String.format, no per-line
+// String) and handed to the sink only when the buffer fills up or on flush().
+//
+//   w.dec(lc).tab().str("58").dec(reg).dec(addr, 3).newline();   // 500<TAB>581800
+class ObjectCodeWriter implements Closeable, Flushable {
+
+    // Where full buffers go
+    interface Sink {
+        void write(byte[] b, int off, int len) throws IOException;
+        default void flush() throws IOException {}
+        default void close() throws IOException {}
+    }
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private final Sink sink;
+    private final byte[] buf;
+    private int pos = 0;
+    private long written = 0;
+
+    ObjectCodeWriter(Sink sink) {
+        this(sink, BUFFER_SIZE);
+    }
+
+    ObjectCodeWriter(Sink sink, int bufferSize) {
+        this.sink = sink;
+        this.buf = new byte[Math.max(bufferSize, 32)]; // room for any single number
+    }
+
+    // --- Sinks ---
+
+    static ObjectCodeWriter stdout() {
+        return new ObjectCodeWriter(new Sink() {
+            public void write(byte[] b, int off, int len) { System.out.write(b, off, len); }
+            public void flush() { System.out.flush(); }
+        });
+    }
+
+    static ObjectCodeWriter file(String path) throws IOException {
+        FileChannel ch = FileChannel.open(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new ObjectCodeWriter(new Sink() {
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+                while (bb.hasRemaining()) ch.write(bb);
+            }
+            public void close() throws IOException { ch.close(); }
+        });
+    }
+
+    // In-memory sink (tests, per-chunk buffers). Read back with toByteArray()/toString().
+    static ObjectCodeWriter memory() {
+        return new ObjectCodeWriter(new MemorySink());
+    }
+
+    static class MemorySink extends ByteArrayOutputStream implements Sink {}
+
+    // --- Fields ---
+
+    ObjectCodeWriter ch(char c) {
+        if (pos == buf.length) drain();
+        buf[pos++] = (byte) c;
+        return this;
+    }
+
+    ObjectCodeWriter tab() {
+        return ch('\t');
+    }
+
+    ObjectCodeWriter newline() {
+        return ch('\n');
+    }
+
+    ObjectCodeWriter str(CharSequence s) {
+        for (int i = 0, n = s.length(); i < n; i++) ch(s.charAt(i));
+        return this;
+    }
+
+    // Left-justified and space-padded to width, like %-Ns
+    ObjectCodeWriter str(CharSequence s, int width) {
+        str(s);
+        return spaces(width - s.length());
+    }
+
+    ObjectCodeWriter spaces(int n) {
+        for (int i = 0; i < n; i++) ch(' ');
+        return this;
+    }
+
+    // Plain decimal, like %d
+    ObjectCodeWriter dec(int v) {
+        return dec(v, 0);
+    }
+
+    // Zero-padded decimal, like %0Nd (sign counts towards the width)
+    ObjectCodeWriter dec(int v, int width) {
+        long x = v;
+        if (x < 0) {
+            ch('-');
+            x = -x;
+            width--;
+        }
+        int digits = 1;
+        for (long t = x; t >= 10; t /= 10) digits++;
+        for (int i = digits; i < width; i++) ch('0');
+
+        if (buf.length - pos < digits) drain();
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + x % 10);
+            x /= 10;
+        }
+        pos += digits;
+        return this;
+    }
+
+    // Left-justified decimal padded with spaces, like %-Nd
+    ObjectCodeWriter decLeft(int v, int width) {
+        dec(v);
+        return spaces(width - length(v));
+    }
+
+    // Zero-padded upper-case hex, like %0NX
+    ObjectCodeWriter hex(int v, int width) {
+        int digits = (v == 0) ? 1 : (32 - Integer.numberOfLeadingZeros(v) + 3) / 4;
+        for (int i = digits; i < width; i++) ch('0');
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            ch(HEX[(v >>> shift) & 0xF]);
+        }
+        return this;
+    }
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    // Characters needed to print v in decimal
+    static int length(int v) {
+        long x = v;
+        int n = 1;
+        if (x < 0) { n++; x = -x; }
+        for (; x >= 10; x /= 10) n++;
+        return n;
+    }
+
+    // Pre-formatted block (e.g. a chunk rendered by another writer)
+    ObjectCodeWriter bytes(byte[] b) {
+        drain();
+        try {
+            sink.write(b, 0, b.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        written += b.length;
+        return this;
+    }
+
+    // --- Batching ---
+
+    long bytesWritten() {
+        return written + pos;
+    }
+
+    private void drain() {
+        try {
+            if (pos > 0) sink.write(buf, 0, pos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        written += pos;
+        pos = 0;
+    }
+
+    public void flush() {
+        drain();
+        try {
+            sink.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void close() throws IOException {
+        flush();
+        sink.close();
+    }
+
+    byte[] toByteArray() {
+        flush();
+        return ((MemorySink) sink).toByteArray();
+    }
+
+    public String toString() {
+        return (sink instanceof MemorySink) ? new String(toByteArray(), StandardCharsets.US_ASCII) : super.toString();
+    }
+}
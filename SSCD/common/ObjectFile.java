@@ -0,0 +1,265 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Relocatable object module: written by Pass 2 (AssemblerPass2 --object), read by the linker.
+//
+// File layout (big-endian):
+//   "SOB" + version byte
+//   header:        [origin:4][size:4][runs:4][relocations:4][globals:4][externals:4][references:4]
+//   text:          runs x [address:4][count:4] + count words
+//                  word = [kind:1][opcode:1][reg:1][0:1][value:4]   (kind INSTRUCTION or DATA)
+//   relocations:   relocations x [address:4]                the word's operand is an address in this unit
+//   globals:       globals x [address:4][nameLength:2][name]    labels defined in this unit
+//   externals:     externals x [nameLength:2][name]             symbols used but not defined here
+//   references:    references x [address:4][external:4]     the word's operand is that external's address
+//
+// Addresses are the ones the unit was assembled at: origin is its lowest address and size runs up
+// to its final LC (DS areas included). Loading the unit elsewhere adds one delta to every relocated
+// operand; external operands are filled in from the linker's global symbol table.
+class ObjectFile {
+    static final byte[] MAGIC = {'S', 'O', 'B'};
+    static final byte VERSION = 1;
+    static final int HEADER = 4 + 7 * 4;
+    static final int WORD = 8;
+
+    // Word kind; EMPTY only appears in a linked image (DS areas, gaps between units)
+    static final byte EMPTY = 0;
+    static final byte INSTRUCTION = 1;
+    static final byte DATA = 2;
+
+    static final int NO_OPCODE = 0xFF;  // Opcodes.NONE in the one-byte opcode field
+
+    // ================= BUILDER =================
+    // Collects one unit's words and tables in IC order, then writes the module
+    static class Builder {
+        private int count = 0;
+        private int[] address = new int[256], value = new int[256];
+        private byte[] kind = new byte[256], opcode = new byte[256], reg = new byte[256];
+        // Per word: operand is relocated, or the external it names (-1 = none). Kept with the word,
+        // so a word replaced by a later one at the same address takes its marks with it.
+        private boolean[] relocated = new boolean[256];
+        private int[] external = new int[256];
+        private boolean ascending = true;
+        private int origin = Integer.MAX_VALUE, end = Integer.MIN_VALUE;
+
+        private final List<String> globals = new ArrayList<>();
+        private int[] globalAddress = new int[64];
+        private final List<String> externalNames = new ArrayList<>();       // index in external[]
+        private final Map<String, Integer> externalIndex = new HashMap<>();
+
+        void instruction(int lc, int machineOpcode, int register, int operand) {
+            word(lc, INSTRUCTION, (machineOpcode == Opcodes.NONE) ? NO_OPCODE : machineOpcode, register, operand);
+        }
+
+        void data(int lc, int v) {
+            word(lc, DATA, 0, 0, v);
+        }
+
+        // DS: no text, but the unit extends over the reserved words
+        void reserve(int lc, int words) {
+            extend(lc, lc + words);
+        }
+
+        // The operand of the word just added at lc is an address inside this unit
+        void relocate(int lc) {
+            relocated[last(lc)] = true;
+        }
+
+        // The operand of the word just added at lc is the address of name, defined in another unit
+        void external(int lc, String name) {
+            Integer index = externalIndex.get(name);
+            if (index == null) {
+                index = externalNames.size();
+                externalIndex.put(name, index);
+                externalNames.add(name);
+            }
+            external[last(lc)] = index;
+        }
+
+        private int last(int lc) {
+            if (count == 0 || address[count - 1] != lc)
+                throw new IllegalStateException("no word at " + lc + " to mark");
+            return count - 1;
+        }
+
+        void global(String name, int lc) {
+            if (globals.size() == globalAddress.length) globalAddress = Arrays.copyOf(globalAddress, globals.size() * 2);
+            globalAddress[globals.size()] = lc;
+            globals.add(name);
+        }
+
+        private void word(int lc, byte k, int op, int r, int v) {
+            if (count == address.length) {
+                int n = count * 2;
+                address = Arrays.copyOf(address, n);
+                value = Arrays.copyOf(value, n);
+                kind = Arrays.copyOf(kind, n);
+                opcode = Arrays.copyOf(opcode, n);
+                reg = Arrays.copyOf(reg, n);
+                relocated = Arrays.copyOf(relocated, n);
+                external = Arrays.copyOf(external, n);
+            }
+            if (count > 0 && lc <= address[count - 1]) ascending = false;
+            address[count] = lc;
+            kind[count] = k;
+            opcode[count] = (byte) op;
+            reg[count] = (byte) r;
+            value[count] = v;
+            relocated[count] = false;
+            external[count] = -1;
+            count++;
+            extend(lc, lc + 1);
+        }
+
+        private void extend(int from, int to) {
+            origin = Math.min(origin, from);
+            end = Math.max(end, to);
+        }
+
+        void write(OutputStream os) throws IOException {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+
+            // Words in address order (only a second START going backwards needs the sort);
+            // a word assembled twice at one address keeps the later one, as loading would
+            Integer[] order = null;
+            if (!ascending) {
+                order = new Integer[count];
+                for (int i = 0; i < count; i++) order[i] = i;
+                Arrays.sort(order, Comparator.comparingInt((Integer i) -> address[i]).thenComparingInt(i -> i));
+            }
+            int[] sorted = new int[count];
+            int words = 0;
+            for (int i = 0; i < count; i++) {
+                int w = (order == null) ? i : order[i];
+                if (words > 0 && address[sorted[words - 1]] == address[w]) words--;
+                sorted[words++] = w;
+            }
+            int runs = 0, relocationCount = 0, referenceCount = 0;
+            // Externals in order of first reference by a word that was kept
+            Map<String, Integer> externals = new LinkedHashMap<>();
+            for (int i = 0; i < words; i++) {
+                int w = sorted[i];
+                if (i == 0 || address[w] != address[sorted[i - 1]] + 1) runs++;
+                if (relocated[w]) relocationCount++;
+                if (external[w] != -1) {
+                    externals.putIfAbsent(externalNames.get(external[w]), externals.size());
+                    referenceCount++;
+                }
+            }
+
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(end == Integer.MIN_VALUE ? 0 : origin);
+            out.writeInt(end == Integer.MIN_VALUE ? 0 : end - origin);
+            out.writeInt(runs);
+            out.writeInt(relocationCount);
+            out.writeInt(globals.size());
+            out.writeInt(externals.size());
+            out.writeInt(referenceCount);
+
+            // Text runs: consecutive addresses share one [address][count] header
+            for (int i = 0; i < words; ) {
+                int j = i + 1;
+                while (j < words && address[sorted[j]] == address[sorted[j - 1]] + 1) j++;
+                out.writeInt(address[sorted[i]]);
+                out.writeInt(j - i);
+                for (; i < j; i++) {
+                    int w = sorted[i];
+                    out.writeByte(kind[w]);
+                    out.writeByte(opcode[w]);
+                    out.writeByte(reg[w]);
+                    out.writeByte(0);
+                    out.writeInt(value[w]);
+                }
+            }
+            for (int i = 0; i < words; i++) {
+                if (relocated[sorted[i]]) out.writeInt(address[sorted[i]]);
+            }
+            for (int i = 0; i < globals.size(); i++) {
+                out.writeInt(globalAddress[i]);
+                writeName(out, globals.get(i));
+            }
+            for (String name : externals.keySet()) writeName(out, name);
+            for (int i = 0; i < words; i++) {
+                int w = sorted[i];
+                if (external[w] == -1) continue;
+                out.writeInt(address[w]);
+                out.writeInt(externals.get(externalNames.get(external[w])));
+            }
+            out.flush();
+        }
+
+        byte[] toByteArray() {
+            ByteArrayOutputStream b = new ByteArrayOutputStream(HEADER + count * (WORD + 4));
+            try {
+                write(b);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return b.toByteArray();
+        }
+
+        private static void writeName(DataOutputStream out, String name) throws IOException {
+            byte[] b = name.getBytes(StandardCharsets.US_ASCII);
+            out.writeShort(b.length);
+            out.write(b);
+        }
+    }
+
+    // ================= MODULE =================
+    // A module over its bytes (a mapped file or an in-memory object). Opening it only walks the
+    // section headers; words and names are read in place when the linker needs them.
+    static class Module {
+        final String name;
+        final ByteBuffer buf;
+        final int origin, size;
+        final int runs, relocations, globals, externals, references;
+        final int textAt, relocationsAt, globalsAt, externalsAt, referencesAt;
+
+        Module(String name, ByteBuffer buf) throws IOException {
+            this.name = name;
+            this.buf = buf;
+            if (buf.limit() < HEADER || buf.get(0) != MAGIC[0] || buf.get(1) != MAGIC[1] || buf.get(2) != MAGIC[2])
+                throw new IOException(name + ": not an object file");
+            if (buf.get(3) != VERSION)
+                throw new IOException(name + ": unsupported object version " + buf.get(3));
+            origin = buf.getInt(4);
+            size = buf.getInt(8);
+            runs = buf.getInt(12);
+            relocations = buf.getInt(16);
+            globals = buf.getInt(20);
+            externals = buf.getInt(24);
+            references = buf.getInt(28);
+
+            textAt = HEADER;
+            int p = textAt;
+            for (int i = 0; i < runs; i++) p += 8 + buf.getInt(p + 4) * WORD;
+            relocationsAt = p;
+            globalsAt = relocationsAt + relocations * 4;
+            p = globalsAt;
+            for (int i = 0; i < globals; i++) p += 6 + buf.getShort(p + 4);
+            externalsAt = p;
+            for (int i = 0; i < externals; i++) p += 2 + buf.getShort(p);
+            referencesAt = p;
+            if (referencesAt + references * 8L != buf.limit())
+                throw new IOException(name + ": truncated object file");
+        }
+
+        // Read-only mapping of an object file on disk
+        static Module map(String file) throws IOException {
+            try (FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+                return new Module(file, ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+            }
+        }
+
+        static String name(ByteBuffer buf, int at) {
+            byte[] b = new byte[buf.getShort(at)];
+            buf.get(at + 2, b);
+            return new String(b, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+import java.nio.ByteBuffer;
+
+// GENERATED from isa.def by GenOpcodes -- edit the definition file and regenerate:
+//     java GenOpcodes.java isa.def > Opcodes.java
+//
+// Mnemonic lookup returns a packed int: class << 16 | IC opcode << 8 | length (words).
+// Register lookup returns the register code. Both return NONE for anything else.
+final class Opcodes {
+    static final int NONE = -1;
+
+    // Packed mnemonic entries
+    static final int STOP = ICRecord.IS << 16 | 0 << 8 | 1;
+    static final int ADD = ICRecord.IS << 16 | 1 << 8 | 1;
+    static final int SUB = ICRecord.IS << 16 | 2 << 8 | 1;
+    static final int MULT = ICRecord.IS << 16 | 3 << 8 | 1;
+    static final int MOVER = ICRecord.IS << 16 | 4 << 8 | 1;
+    static final int MOVEM = ICRecord.IS << 16 | 5 << 8 | 1;
+    static final int START = ICRecord.AD << 16 | 1 << 8 | 0;
+    static final int END = ICRecord.AD << 16 | 2 << 8 | 0;
+    static final int LTORG = ICRecord.AD << 16 | 5 << 8 | 0;
+    static final int DC = ICRecord.DL << 16 | 1 << 8 | 1;
+    static final int DS = ICRecord.DL << 16 | 2 << 8 | 0;
+
+    // Definition order, for printing OPTAB / REGTAB
+    static final String[] MNEMONICS = {"STOP", "ADD", "SUB", "MULT", "MOVER", "MOVEM", "START", "END", "LTORG", "DC", "DS"};
+    static final int[] PACKED = {STOP, ADD, SUB, MULT, MOVER, MOVEM, START, END, LTORG, DC, DS};
+    static final String[] REGISTERS = {"AREG", "BREG", "CREG", "DREG"};
+    static final int[] REGISTER_CODES = {1, 2, 3, 4};
+
+    static int cls(int packed) {
+        return packed >>> 16;
+    }
+
+    static int opcode(int packed) {
+        return (packed >>> 8) & 0xFF;
+    }
+
+    static int length(int packed) {
+        return packed & 0xFF;
+    }
+
+    static int mnemonic(ByteBuffer b, int s, int e) {
+        switch (e - s) {
+            case 2:
+                switch (b.get(s)) {
+                    case 'D':
+                        if (b.get(s + 1) == 'C') return DC;
+                        if (b.get(s + 1) == 'S') return DS;
+                        return NONE;
+                }
+                return NONE;
+            case 3:
+                switch (b.get(s)) {
+                    case 'A':
+                        if (b.get(s + 1) == 'D' && b.get(s + 2) == 'D') return ADD;
+                        return NONE;
+                    case 'E':
+                        if (b.get(s + 1) == 'N' && b.get(s + 2) == 'D') return END;
+                        return NONE;
+                    case 'S':
+                        if (b.get(s + 1) == 'U' && b.get(s + 2) == 'B') return SUB;
+                        return NONE;
+                }
+                return NONE;
+            case 4:
+                switch (b.get(s)) {
+                    case 'M':
+                        if (b.get(s + 1) == 'U' && b.get(s + 2) == 'L' && b.get(s + 3) == 'T') return MULT;
+                        return NONE;
+                    case 'S':
+                        if (b.get(s + 1) == 'T' && b.get(s + 2) == 'O' && b.get(s + 3) == 'P') return STOP;
+                        return NONE;
+                }
+                return NONE;
+            case 5:
+                switch (b.get(s)) {
+                    case 'L':
+                        if (b.get(s + 1) == 'T' && b.get(s + 2) == 'O' && b.get(s + 3) == 'R' && b.get(s + 4) == 'G') return LTORG;
+                        return NONE;
+                    case 'M':
+                        if (b.get(s + 1) == 'O' && b.get(s + 2) == 'V' && b.get(s + 3) == 'E' && b.get(s + 4) == 'R') return MOVER;
+                        if (b.get(s + 1) == 'O' && b.get(s + 2) == 'V' && b.get(s + 3) == 'E' && b.get(s + 4) == 'M') return MOVEM;
+                        return NONE;
+                    case 'S':
+                        if (b.get(s + 1) == 'T' && b.get(s + 2) == 'A' && b.get(s + 3) == 'R' && b.get(s + 4) == 'T') return START;
+                        return NONE;
+                }
+                return NONE;
+        }
+        return NONE;
+    }
+
+    static int mnemonic(String w) {
+        switch (w.length()) {
+            case 2:
+                switch (w.charAt(0)) {
+                    case 'D':
+                        if (w.charAt(1) == 'C') return DC;
+                        if (w.charAt(1) == 'S') return DS;
+                        return NONE;
+                }
+                return NONE;
+            case 3:
+                switch (w.charAt(0)) {
+                    case 'A':
+                        if (w.charAt(1) == 'D' && w.charAt(2) == 'D') return ADD;
+                        return NONE;
+                    case 'E':
+                        if (w.charAt(1) == 'N' && w.charAt(2) == 'D') return END;
+                        return NONE;
+                    case 'S':
+                        if (w.charAt(1) == 'U' && w.charAt(2) == 'B') return SUB;
+                        return NONE;
+                }
+                return NONE;
+            case 4:
+                switch (w.charAt(0)) {
+                    case 'M':
+                        if (w.charAt(1) == 'U' && w.charAt(2) == 'L' && w.charAt(3) == 'T') return MULT;
+                        return NONE;
+                    case 'S':
+                        if (w.charAt(1) == 'T' && w.charAt(2) == 'O' && w.charAt(3) == 'P') return STOP;
+                        return NONE;
+                }
+                return NONE;
+            case 5:
+                switch (w.charAt(0)) {
+                    case 'L':
+                        if (w.charAt(1) == 'T' && w.charAt(2) == 'O' && w.charAt(3) == 'R' && w.charAt(4) == 'G') return LTORG;
+                        return NONE;
+                    case 'M':
+                        if (w.charAt(1) == 'O' && w.charAt(2) == 'V' && w.charAt(3) == 'E' && w.charAt(4) == 'R') return MOVER;
+                        if (w.charAt(1) == 'O' && w.charAt(2) == 'V' && w.charAt(3) == 'E' && w.charAt(4) == 'M') return MOVEM;
+                        return NONE;
+                    case 'S':
+                        if (w.charAt(1) == 'T' && w.charAt(2) == 'A' && w.charAt(3) == 'R' && w.charAt(4) == 'T') return START;
+                        return NONE;
+                }
+                return NONE;
+        }
+        return NONE;
+    }
+
+    static int register(ByteBuffer b, int s, int e) {
+        switch (e - s) {
+            case 4:
+                switch (b.get(s)) {
+                    case 'A':
+                        if (b.get(s + 1) == 'R' && b.get(s + 2) == 'E' && b.get(s + 3) == 'G') return 1;
+                        return NONE;
+                    case 'B':
+                        if (b.get(s + 1) == 'R' && b.get(s + 2) == 'E' && b.get(s + 3) == 'G') return 2;
+                        return NONE;
+                    case 'C':
+                        if (b.get(s + 1) == 'R' && b.get(s + 2) == 'E' && b.get(s + 3) == 'G') return 3;
+                        return NONE;
+                    case 'D':
+                        if (b.get(s + 1) == 'R' && b.get(s + 2) == 'E' && b.get(s + 3) == 'G') return 4;
+                        return NONE;
+                }
+                return NONE;
+        }
+        return NONE;
+    }
+
+    static int register(String w) {
+        switch (w.length()) {
+            case 4:
+                switch (w.charAt(0)) {
+                    case 'A':
+                        if (w.charAt(1) == 'R' && w.charAt(2) == 'E' && w.charAt(3) == 'G') return 1;
+                        return NONE;
+                    case 'B':
+                        if (w.charAt(1) == 'R' && w.charAt(2) == 'E' && w.charAt(3) == 'G') return 2;
+                        return NONE;
+                    case 'C':
+                        if (w.charAt(1) == 'R' && w.charAt(2) == 'E' && w.charAt(3) == 'G') return 3;
+                        return NONE;
+                    case 'D':
+                        if (w.charAt(1) == 'R' && w.charAt(2) == 'E' && w.charAt(3) == 'G') return 4;
+                        return NONE;
+                }
+                return NONE;
+        }
+        return NONE;
+    }
+
+    // Target machine opcode for an IS opcode (Pass 2)
+    static int machineOpcode(int opcode) {
+        switch (opcode) {
+            case 0: return 0x00; // STOP
+            case 1: return 0x58; // ADD
+            case 2: return 0x5A; // SUB
+            case 3: return 0x50; // MULT
+            case 4: return 0x47; // MOVER
+            case 5: return 0x07; // MOVEM
+            default: return NONE;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Interned identifier pool shared by the macro processor and the assembler passes.
+// Every distinct identifier (mnemonic, register, label, macro name...) gets a dense int ID the
+// first time it is seen; tables can then be plain arrays indexed by that ID instead of
+// String-keyed maps. Tokens can be interned straight from a byte buffer, so a known identifier
+// costs one hash over its bytes and no allocation.
+class SymbolPool {
+    // One pool for the whole toolchain, so IDs mean the same thing in every pass
+    static final SymbolPool SHARED = new SymbolPool();
+
+    // One generation of the tables. Lookups run without a lock on whichever generation they read:
+    // an entry is complete before its slot is published (volatile store into slots), and a full
+    // table is replaced by a bigger copy instead of being resized in place. Only adding takes the
+    // lock, so lexers on many threads do not serialize on identifiers they have already seen.
+    private static final class Table {
+        final AtomicIntegerArray slots;   // open addressing: id + 1, 0 = empty
+        final byte[][] bytes;
+        final int[] hashes;
+        final String[] names;             // filled on first name(id)
+
+        Table(int slotCount, int capacity) {
+            slots = new AtomicIntegerArray(slotCount);
+            bytes = new byte[capacity][];
+            hashes = new int[capacity];
+            names = new String[capacity];
+        }
+    }
+
+    private volatile Table table = new Table(1024, 256);
+    private volatile int count = 0;       // written under the lock
+
+    // --- Interning ---
+
+    int intern(ByteBuffer buf, int from, int to) {
+        int h = hash(buf, from, to);
+        int found = probe(table, h, buf, from, to);
+        if (found >= 0) return found;
+        synchronized (this) {
+            Table t = table;
+            found = probe(t, h, buf, from, to);
+            return (found >= 0) ? found : add(t, copy(buf, from, to), null, h, -1 - found);
+        }
+    }
+
+    int intern(String name) {
+        int h = hash(name);
+        int found = probe(table, h, name);
+        if (found >= 0) return found;
+        synchronized (this) {
+            Table t = table;
+            found = probe(t, h, name);
+            return (found >= 0) ? found : add(t, name.getBytes(StandardCharsets.US_ASCII), name, h, -1 - found);
+        }
+    }
+
+    // Returns the ID or -1 without adding the name
+    int find(String name) {
+        int found = probe(table, hash(name), name);
+        return (found >= 0) ? found : -1;
+    }
+
+    String name(int id) {
+        Table t = table;
+        String n = t.names[id];
+        if (n == null) {
+            // Racing threads build equal Strings; either one may stay cached
+            n = new String(t.bytes[id], StandardCharsets.US_ASCII);
+            t.names[id] = n;
+        }
+        return n;
+    }
+
+    int size() {
+        return count;
+    }
+
+    // ID of a matching entry, or -(empty slot + 1) where it would go
+    private static int probe(Table t, int h, ByteBuffer buf, int from, int to) {
+        int mask = t.slots.length() - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int s = t.slots.get(i);
+            if (s == 0) return -1 - i;
+            int id = s - 1;
+            if (t.hashes[id] == h && equals(t.bytes[id], buf, from, to)) return id;
+        }
+    }
+
+    private static int probe(Table t, int h, String name) {
+        int mask = t.slots.length() - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int s = t.slots.get(i);
+            if (s == 0) return -1 - i;
+            int id = s - 1;
+            if (t.hashes[id] == h && equals(t.bytes[id], name)) return id;
+        }
+    }
+
+    // Called with the lock held; publishes the entry last
+    private int add(Table t, byte[] b, String name, int h, int slot) {
+        int id = count;
+        if (id == t.bytes.length || (id + 1) * 2 > t.slots.length()) {
+            t = grow(t, id);
+            slot = -1 - probe(t, h, b);
+        }
+        t.bytes[id] = b;
+        t.hashes[id] = h;
+        t.names[id] = name;
+        t.slots.set(slot, id + 1);
+        count = id + 1;
+        table = t;
+        return id;
+    }
+
+    // Bigger copy of t holding its first n entries; not visible to readers until add publishes it
+    private static Table grow(Table t, int n) {
+        int capacity = (n == t.bytes.length) ? n * 2 : t.bytes.length;
+        int slotCount = ((n + 1) * 2 > t.slots.length()) ? t.slots.length() * 2 : t.slots.length();
+        Table bigger = new Table(slotCount, capacity);
+        System.arraycopy(t.bytes, 0, bigger.bytes, 0, n);
+        System.arraycopy(t.hashes, 0, bigger.hashes, 0, n);
+        System.arraycopy(t.names, 0, bigger.names, 0, n);
+        int mask = slotCount - 1;
+        for (int id = 0; id < n; id++) {
+            int i = bigger.hashes[id] & mask;
+            while (bigger.slots.get(i) != 0) i = (i + 1) & mask;
+            bigger.slots.set(i, id + 1);
+        }
+        return bigger;
+    }
+
+    private static int probe(Table t, int h, byte[] b) {
+        int mask = t.slots.length() - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int s = t.slots.get(i);
+            if (s == 0) return -1 - i;
+            int id = s - 1;
+            if (t.hashes[id] == h && Arrays.equals(t.bytes[id], b)) return id;
+        }
+    }
+
+    // --- Hashing (FNV-1a over ASCII bytes, identical for both input forms) ---
+
+    private static int hash(ByteBuffer buf, int from, int to) {
+        int h = 0x811C9DC5;
+        for (int i = from; i < to; i++) h = (h ^ (buf.get(i) & 0xFF)) * 0x01000193;
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(String s) {
+        int h = 0x811C9DC5;
+        for (int i = 0; i < s.length(); i++) h = (h ^ (s.charAt(i) & 0xFF)) * 0x01000193;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(byte[] a, ByteBuffer buf, int from, int to) {
+        if (a.length != to - from) return false;
+        for (int i = 0; i < a.length; i++) if (a[i] != buf.get(from + i)) return false;
+        return true;
+    }
+
+    private static boolean equals(byte[] a, String s) {
+        if (a.length != s.length()) return false;
+        for (int i = 0; i < a.length; i++) if (a[i] != (byte) s.charAt(i)) return false;
+        return true;
+    }
+
+    private static byte[] copy(ByteBuffer buf, int from, int to) {
+        byte[] b = new byte[to - from];
+        for (int i = 0; i < b.length; i++) b[i] = buf.get(from + i);
+        return b;
+    }
+}
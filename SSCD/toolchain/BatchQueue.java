@@ -0,0 +1,115 @@
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+// Bounded hand-over between two pipeline stages running on different threads.
+// The producer writes through output() (or sink() for an ObjectCodeWriter); every write is one
+// batch on the queue - the stages' own 64 KB buffers decide the batch size. The consumer reads
+// the batches back as a plain InputStream. When the queue is full the producer waits, so a fast
+// stage can never run more than CAPACITY batches ahead of a slow one.
+//
+// cancel() releases both sides (e.g. after a stage failed) instead of leaving one blocked.
+class BatchQueue {
+    static final int CAPACITY = 8;
+    private static final byte[] EOF = new byte[0];
+
+    private final ArrayBlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private volatile boolean cancelled = false;
+
+    void put(byte[] b, int off, int len) throws IOException {
+        if (len > 0) offer(Arrays.copyOfRange(b, off, off + len));
+    }
+
+    void finish() throws IOException {
+        offer(EOF);
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    private void offer(byte[] batch) throws IOException {
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelled) throw new IOException("pipeline cancelled");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    // Next batch, or EOF once the producer has finished
+    private byte[] take() throws IOException {
+        try {
+            byte[] batch;
+            while ((batch = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                if (cancelled) throw new IOException("pipeline cancelled");
+            }
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    // --- Producer side ---
+
+    OutputStream output() {
+        return new OutputStream() {
+            public void write(int b) throws IOException {
+                put(new byte[] {(byte) b}, 0, 1);
+            }
+            public void write(byte[] b, int off, int len) throws IOException {
+                put(b, off, len);
+            }
+            public void close() throws IOException {
+                finish();
+            }
+        };
+    }
+
+    ObjectCodeWriter.Sink sink() {
+        return new ObjectCodeWriter.Sink() {
+            public void write(byte[] b, int off, int len) throws IOException {
+                put(b, off, len);
+            }
+            public void close() throws IOException {
+                finish();
+            }
+        };
+    }
+
+    // --- Consumer side ---
+
+    InputStream input() {
+        return new InputStream() {
+            private byte[] batch = null;
+            private int pos = 0;
+
+            // false at end of stream
+            private boolean fill() throws IOException {
+                if (batch == EOF) return false;
+                while (batch == null || pos == batch.length) {
+                    batch = take();
+                    pos = 0;
+                    if (batch == EOF) return false;
+                }
+                return true;
+            }
+
+            public int read() throws IOException {
+                return fill() ? batch[pos++] & 0xFF : -1;
+            }
+
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                if (!fill()) return -1;
+                int n = Math.min(len, batch.length - pos);
+                System.arraycopy(batch, pos, b, off, n);
+                pos += n;
+                return n;
+            }
+        };
+    }
+}
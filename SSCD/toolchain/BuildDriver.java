@@ -0,0 +1,274 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Multi-file build: runs macro expansion -> Pass 1 -> Pass 2 for every translation unit.
+// Each unit gets its own MacroAssembler, a1 and AssemblerPass2 instances (own MNT/MDT, SYMTAB,
+// IC), so units run concurrently on a bounded pool; only the interned SymbolPool is shared.
+// Stages hand over in memory: expanded text -> binary IC (common/ICRecord) -> object code.
+public class BuildDriver {
+
+    // Outcome and timings of one translation unit
+    static class Unit {
+        String file;
+        int lines;             // source lines
+        int icRecords;
+        long objectBytes;
+        long macroNs, pass1Ns, pass2Ns;
+        long wallNs;           // pipelined: stages overlap, so the unit's time is start to finish
+        String error;          // null when the unit built
+        byte[] object;
+
+        Unit(String file) {
+            this.file = file;
+        }
+
+        long totalNs() {
+            return (wallNs > 0) ? wallNs : macroNs + pass1Ns + pass2Ns;
+        }
+    }
+
+    static int threads = Runtime.getRuntime().availableProcessors();
+    static boolean virtualThreads = false;
+    static String library = null;   // precompiled macro library shared by all units
+    static String outDir = null;    // where <unit>.obj files go (none = not written)
+    static boolean pipelined = false; // stages of a unit run concurrently (see Pipeline)
+    static String linkImage = null; // units become relocatable objects, linked into this image (see Linker)
+    // Phase timers and counters of all stages of all units (see common/Metrics)
+    static Metrics metrics = new Metrics();
+    static String metricsFile = null;
+
+    public static void main(String[] args) {
+        // java BuildDriver [--threads N] [--virtual] [--pipeline] [--lib macros.mlb] [--out dir] [--link image.sim]
+        //                  [--metrics m.json|m.csv] unit.asm...
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--virtual")) {
+                virtualThreads = true;
+            } else if (args[i].equals("--pipeline")) {
+                pipelined = true;
+            } else if (args[i].equals("--lib") && i + 1 < args.length) {
+                library = args[++i];
+            } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                metricsFile = args[++i];
+            } else if (args[i].equals("--out") && i + 1 < args.length) {
+                outDir = args[++i];
+            } else if (args[i].equals("--link") && i + 1 < args.length) {
+                linkImage = args[++i];
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (pipelined && linkImage != null) {
+            // The pipeline writes listings, not the relocatable objects the linker needs
+            System.err.println("--pipeline cannot be combined with --link");
+            return;
+        }
+        if (files.isEmpty()) {
+            files.add("prog1.asm");
+            files.add("prog2.asm");
+        }
+
+        long start = System.nanoTime();
+        List<Unit> units = buildAll(files);
+        long wallNs = System.nanoTime() - start;
+
+        report(units, wallNs);
+        if (linkImage != null) link(units);
+        if (metricsFile != null) {
+            for (Unit u : units) {
+                metrics.add("build.units", 1);
+                metrics.add("build.lines", u.lines);
+                if (u.error != null) metrics.add("build.failed", 1);
+            }
+            metrics.add("build.wall_ms", wallNs / 1_000_000);
+            metrics.write(metricsFile);
+        }
+    }
+
+    static List<Unit> buildAll(List<String> files) {
+        List<Unit> units = new ArrayList<>();
+        ExecutorService pool = newPool();
+        Semaphore slots = new Semaphore(threads); // bounds concurrency with virtual threads too
+        try {
+            List<Future<Unit>> pending = new ArrayList<>();
+            for (String f : files) {
+                pending.add(pool.submit(() -> {
+                    slots.acquire();
+                    try {
+                        return pipelined ? Pipeline.build(f, library) : build(f);
+                    } finally {
+                        slots.release();
+                    }
+                }));
+            }
+            for (Future<Unit> u : pending) units.add(u.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return units;
+    }
+
+    // Virtual threads need JDK 21; on older JDKs (or without --virtual) use a fixed pool
+    static ExecutorService newPool() {
+        if (virtualThreads) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("virtual threads not available, using " + threads + " platform threads");
+            }
+        }
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    // Full pipeline for one unit; errors are recorded on the unit instead of stopping the build
+    static Unit build(String file) {
+        Unit u = new Unit(file);
+        try {
+            long t = System.nanoTime();
+            MacroAssembler macros = new MacroAssembler();
+            if (library != null) MacroLibrary.load(macros, library);
+            String[][] source = MacroAssembler.readSource(file, macros.mnt.keySet());
+            long setup = System.nanoTime() - t;
+            build(u, source, macros);
+            u.macroNs += setup;
+            writeObject(u);
+        } catch (IOException | RuntimeException e) {
+            u.error = e.toString();
+        }
+        return u;
+    }
+
+    // Macro expansion -> Pass 1 -> Pass 2 of an already read source; macros may already hold
+    // library definitions. Leaves the object code (or the error) on u.
+    static void build(Unit u, String[][] source, MacroAssembler macros) throws IOException {
+        // Macro expansion
+        long t = System.nanoTime();
+        u.lines = source.length;
+        macros.markers = false;
+        macros.metrics = metrics;
+        macros.pass1(source);
+        byte[] expanded = macros.expandToBytes(source);
+        macros.recordCache();
+        u.macroNs = System.nanoTime() - t;
+
+        // Pass 1 -> binary IC
+        t = System.nanoTime();
+        a1 pass1 = new a1();
+        pass1.pool = macros.pool;
+        pass1.metrics = metrics;
+        ByteArrayOutputStream ic = new ByteArrayOutputStream(expanded.length);
+        pass1.writeBinaryIC(new StreamSource(new ByteArrayInputStream(expanded)), ic);
+        u.pass1Ns = System.nanoTime() - t;
+        u.icRecords = (int) pass1.icRecords;
+        if (linkImage != null) {
+            // Symbols the unit does not define are externals, resolved by the linker
+            t = System.nanoTime();
+            AssemblerPass2 pass2 = new AssemblerPass2();
+            pass2.metrics = metrics;
+            try (ICRecord.Reader in = new ICRecord.Reader(new ByteArrayInputStream(ic.toByteArray()))) {
+                u.object = pass2.toObject(in).toByteArray();
+            }
+            u.objectBytes = u.object.length;
+            u.pass2Ns = System.nanoTime() - t;
+            return;
+        }
+        if (!pass1.fixups.isEmpty()) {
+            u.error = "undefined symbol(s) " + pass1.fixups.keySet();
+            return;
+        }
+
+        // Pass 2 -> object code
+        t = System.nanoTime();
+        AssemblerPass2 pass2 = new AssemblerPass2();
+        pass2.out = ObjectCodeWriter.memory();
+        pass2.metrics = metrics;
+        try (ICRecord.Reader in = new ICRecord.Reader(new ByteArrayInputStream(ic.toByteArray()))) {
+            pass2.runBinary(in, 1);
+        }
+        u.object = pass2.out.toByteArray();
+        u.objectBytes = u.object.length;
+        u.pass2Ns = System.nanoTime() - t;
+    }
+
+    static void writeObject(Unit u) throws IOException {
+        if (outDir != null && u.object != null) {
+            String name = Paths.get(u.file).getFileName().toString().replaceFirst("\\.asm$", "")
+                    + ((linkImage != null) ? ".sob" : ".obj");
+            Files.write(Paths.get(outDir, name), u.object);
+        }
+    }
+
+    // Links the units' objects, in command-line order, once they have all built
+    static void link(List<Unit> units) {
+        ObjectCodeWriter out = ObjectCodeWriter.stdout();
+        out.newline();
+        for (Unit u : units) {
+            if (u.error != null) {
+                out.str("Not linked: ").str(u.file).str(" failed").newline();
+                out.flush();
+                return;
+            }
+        }
+        try {
+            long t = System.nanoTime();
+            List<ObjectFile.Module> modules = new ArrayList<>();
+            for (Unit u : units) modules.add(new ObjectFile.Module(u.file, ByteBuffer.wrap(u.object)));
+            Linker linker = new Linker();
+            linker.threads = threads;
+            linker.metrics = metrics;
+            if (linker.link(modules, linkImage)) {
+                linker.printSummary(out, linkImage);
+                out.str("Link time: ").str(ms(System.nanoTime() - t)).str(" ms").newline();
+            } else {
+                linker.printErrors(out);
+            }
+        } catch (IOException | RuntimeException e) {
+            out.str("Link failed: ").str(e.toString()).newline();
+        }
+        out.flush();
+    }
+
+    static void report(List<Unit> units, long wallNs) {
+        ObjectCodeWriter out = ObjectCodeWriter.stdout();
+        out.str("=== BUILD (").dec(units.size()).str(" units, ").dec(threads).str(virtualThreads ? " virtual" : "")
+           .str(" threads").str(pipelined ? ", pipelined" : "").str(") ===").newline().newline();
+        out.str("UNIT", 16).str(" | ").str("LINES", 8).str(" | ").str("IC", 8).str(" | ").str("OBJ BYTES", 10)
+           .str(" | ").str("MACRO ms", 9).str(" | ").str("PASS1 ms", 9).str(" | ").str("PASS2 ms", 9)
+           .str(" | ").str("TOTAL ms", 9).str(" | ").str("STATUS").newline();
+        out.str("--------------------------------------------------------------------------------------------------------").newline();
+
+        long lines = 0, bytes = 0, cpuNs = 0;
+        int failed = 0;
+        for (Unit u : units) {
+            out.str(Paths.get(u.file).getFileName().toString(), 16).str(" | ").decLeft(u.lines, 8).str(" | ")
+               .decLeft(u.icRecords, 8).str(" | ").decLeft((int) u.objectBytes, 10).str(" | ")
+               .str(ms(u.macroNs), 9).str(" | ").str(ms(u.pass1Ns), 9).str(" | ").str(ms(u.pass2Ns), 9).str(" | ")
+               .str(ms(u.totalNs()), 9).str(" | ").str(u.error == null ? "ok" : "FAILED: " + u.error).newline();
+            lines += u.lines;
+            bytes += u.objectBytes;
+            cpuNs += u.totalNs();
+            if (u.error != null) failed++;
+        }
+
+        double wallSec = wallNs / 1e9;
+        out.newline().str("Units: ").dec(units.size() - failed).str(" built, ").dec(failed).str(" failed").newline();
+        out.str("Source lines: ").str(String.valueOf(lines)).str(", object code: ").str(String.valueOf(bytes)).str(" bytes").newline();
+        out.str("Wall time: ").str(ms(wallNs)).str(" ms (sum of unit times ").str(ms(cpuNs)).str(" ms)").newline();
+        out.str("Throughput: ").str(String.format("%.0f", lines / wallSec)).str(" lines/s, ")
+           .str(String.format("%.1f", units.size() / wallSec)).str(" units/s").newline();
+        out.flush();
+    }
+
+    static String ms(long ns) {
+        return String.format("%.2f", ns / 1e6);
+    }
+}
@@ -0,0 +1,257 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Long-running build server: one warm JVM serves many small assemble / macro-expand requests,
+// so a build that calls the assembler thousands of times pays JVM startup, class loading, table
+// setup and JIT warm-up once instead of per call.
+//
+// Listens on localhost TCP or a Unix-domain socket. One request per connection: a header line,
+// then the source text until the client closes its sending side; the reply is a status line and
+// the result, then the server closes the connection.
+//
+//   request:  assemble [name] | expand [name] | stats | shutdown      (source lines follow)
+//   reply:    OK <bytes>  + object code / expanded source / metrics JSON
+//             ERROR <message>
+//
+// Kept warm across requests: OPTAB/REGTAB (a1.setupTables), the --lib macro library, loaded once
+// and copied into each request's MacroAssembler, and one expansion cache for requests that only
+// call library macros. Each request interns its identifiers into a SymbolPool of its own, so IDs
+// (and the ID-indexed tables) stay as small as the unit and nothing grows with the number of
+// requests. Requests run concurrently, at most --threads at a time, each on its own a1 /
+// AssemblerPass2 instances (virtual threads with --virtual on JDK 21+, as in BuildDriver).
+public class BuildServer {
+
+    static final int DEFAULT_PORT = 7411;
+    static final int WARMUP_RUNS = 20;
+
+    final MacroAssembler library = new MacroAssembler(); // preloaded definitions, never modified
+    // Expansions of library macros, shared by requests whose source defines no macros of its own
+    // (a source definition could change what a library macro expands to)
+    final ExpansionCache cache = new ExpansionCache(16L << 20);
+    final Semaphore slots = new Semaphore(BuildDriver.threads);
+    ServerSocketChannel server;
+
+    public static void main(String[] args) {
+        // java BuildServer [--port N | --socket path] [--threads N] [--virtual] [--lib macros.mlb]
+        //                  [--warmup unit.asm]... [--metrics m.json|m.csv]
+        int port = DEFAULT_PORT;
+        String socket = null;
+        List<String> warmup = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--socket") && i + 1 < args.length) {
+                socket = args[++i];
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                BuildDriver.threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--virtual")) {
+                BuildDriver.virtualThreads = true;
+            } else if (args[i].equals("--lib") && i + 1 < args.length) {
+                BuildDriver.library = args[++i];
+            } else if (args[i].equals("--warmup") && i + 1 < args.length) {
+                warmup.add(args[++i]);
+            } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                BuildDriver.metricsFile = args[++i];
+            } else {
+                System.err.println("unknown option " + args[i]);
+                return;
+            }
+        }
+
+        try {
+            BuildServer s = new BuildServer();
+            s.start(warmup);
+            SocketAddress address = (socket != null)
+                    ? s.bindUnix(Paths.get(socket))
+                    : s.bindTcp(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            System.out.println("BuildServer listening on " + address);
+            s.serve();
+            if (socket != null) Files.deleteIfExists(Paths.get(socket));
+            if (BuildDriver.metricsFile != null) BuildDriver.metrics.write(BuildDriver.metricsFile);
+        } catch (IOException e) { e.printStackTrace(); }
+    }
+
+    // ================= WARM STATE =================
+
+    void start(List<String> warmup) throws IOException {
+        a1.setupTables();
+        if (BuildDriver.library != null) MacroLibrary.load(library, BuildDriver.library);
+
+        // Build the warm-up units a few times so the JIT has compiled the passes before the first
+        // request; their timings and counters are not kept
+        Metrics real = BuildDriver.metrics;
+        BuildDriver.metrics = new Metrics();
+        try {
+            for (String file : warmup) {
+                String[][] source = MacroAssembler.readSource(file, library.mnt.keySet());
+                for (int i = 0; i < WARMUP_RUNS; i++) {
+                    BuildDriver.build(new BuildDriver.Unit(file), source, newMacroAssembler(source));
+                    expand(source);
+                }
+            }
+        } finally {
+            BuildDriver.metrics = real;
+        }
+    }
+
+    MacroAssembler newMacroAssembler(String[][] source) {
+        MacroAssembler m = new MacroAssembler();
+        m.pool = new SymbolPool();
+        if (!definesMacros(source)) {
+            m.cache = cache;
+            m.sharedCache = true;
+        }
+        m.copyDefinitions(library);
+        m.markers = false;
+        m.metrics = BuildDriver.metrics;
+        return m;
+    }
+
+    static boolean definesMacros(String[][] source) {
+        for (String[] row : source) {
+            if ("MACRO".equals(row[1])) return true;
+        }
+        return false;
+    }
+
+    byte[] expand(String[][] source) {
+        MacroAssembler m = newMacroAssembler(source);
+        m.pass1(source);
+        byte[] text = m.expandToBytes(source);
+        m.recordCache();
+        return text;
+    }
+
+    // ================= CONNECTIONS =================
+
+    SocketAddress bindTcp(InetSocketAddress address) throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        return server.getLocalAddress();
+    }
+
+    // Unix-domain socket (JDK 16+); a stale socket file from an earlier run is replaced
+    SocketAddress bindUnix(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        return server.getLocalAddress();
+    }
+
+    // Accepts until a shutdown request closes the server channel, then lets running requests finish
+    void serve() throws IOException {
+        ExecutorService pool = BuildDriver.newPool();
+        try {
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (ClosedChannelException e) {
+                    break;
+                }
+                pool.submit(() -> handle(client));
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    void handle(SocketChannel client) {
+        try (SocketChannel c = client;
+             InputStream in = new BufferedInputStream(Channels.newInputStream(c));
+             OutputStream out = Channels.newOutputStream(c)) {
+            String header = readLine(in);
+            byte[] body = in.readAllBytes();
+            String[] h = (header == null) ? new String[] {""} : header.trim().split("\\s+", 2);
+            String name = (h.length > 1) ? h[1] : "request";
+            byte[] reply;
+            try {
+                reply = respond(h[0], name, body);
+            } catch (IOException | RuntimeException e) {
+                reply = status("ERROR " + e, null);
+            }
+            out.write(reply);
+        } catch (IOException e) { e.printStackTrace(); }
+    }
+
+    byte[] respond(String command, String name, byte[] body) throws IOException {
+        switch (command) {
+            case "assemble": {
+                BuildDriver.Unit u = new BuildDriver.Unit(name);
+                runLimited(() -> {
+                    String[][] source = parse(body);
+                    BuildDriver.build(u, source, newMacroAssembler(source));
+                    return null;
+                });
+                BuildDriver.metrics.add("server.assemble", 1);
+                if (u.error != null) return status("ERROR " + u.error, null);
+                return status("OK " + u.object.length, u.object);
+            }
+            case "expand": {
+                byte[] text = runLimited(() -> expand(parse(body)));
+                BuildDriver.metrics.add("server.expand", 1);
+                return status("OK " + text.length, text);
+            }
+            case "stats": {
+                ObjectCodeWriter w = ObjectCodeWriter.memory();
+                BuildDriver.metrics.writeJson(w);
+                byte[] json = w.toByteArray();
+                return status("OK " + json.length, json);
+            }
+            case "shutdown":
+                server.close();
+                return status("OK 0", null);
+            default:
+                return status("ERROR unknown request '" + command + "'", null);
+        }
+    }
+
+    // At most --threads requests assemble at once, however many connections are open
+    <T> T runLimited(Callable<T> work) throws IOException {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        try {
+            return work.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            slots.release();
+        }
+    }
+
+    String[][] parse(byte[] body) {
+        return MacroAssembler.readSource(new String(body, StandardCharsets.US_ASCII).lines().toList(), library.mnt.keySet());
+    }
+
+    static byte[] status(String line, byte[] payload) {
+        byte[] head = (line.replace('\n', ' ') + "\n").getBytes(StandardCharsets.US_ASCII);
+        if (payload == null) return head;
+        byte[] b = Arrays.copyOf(head, head.length + payload.length);
+        System.arraycopy(payload, 0, b, head.length, payload.length);
+        return b;
+    }
+
+    // Header line; the body that follows stays in the stream
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') sb.append((char) b);
+        return (b < 0 && sb.length() == 0) ? null : sb.toString();
+    }
+}
@@ -0,0 +1,285 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.IntStream;
+
+// Linker / loader: combines relocatable objects (common/ObjectFile, written by AssemblerPass2
+// --object or BuildDriver --link) into one memory image.
+//
+//   1. Layout: modules are loaded one after another, the first at --base (default: its own
+//      origin); each module's relocation delta is its load address minus its origin.
+//   2. Global symbol table: every module's globals go into a SymbolPool (hashed name -> dense ID)
+//      with the linked address in an IntTable; a name defined by two modules is an error.
+//   3. Externals: each module's external names are looked up once, giving a small per-module
+//      array of resolved addresses; anything undefined is an error.
+//   4. Image: the output file is memory-mapped and every module copies its text runs straight
+//      into its region (bulk copy from the object's bytes), then patches relocated operands
+//      (+ delta) and external operands in place. Modules own disjoint regions, so they are
+//      relocated in parallel.
+//
+// Image layout: "SIM" + version byte, [base:4][words:4], then words x 8-byte words in the object
+// word format (kind EMPTY for DS areas).
+public class Linker {
+    static final byte[] IMAGE_MAGIC = {'S', 'I', 'M'};
+    static final byte IMAGE_VERSION = 1;
+    static final int IMAGE_HEADER = 12;
+
+    int base = -1;                               // load address of the first module, -1 = its origin
+    int threads = Runtime.getRuntime().availableProcessors();
+    final SymbolPool names = new SymbolPool();   // own pool: only global names, IDs stay dense
+    final IntTable address = new IntTable();     // global ID -> linked address
+    final IntTable definedBy = new IntTable();   // global ID -> module index
+    final List<String> errors = new ArrayList<>();
+    Metrics metrics = new Metrics();
+
+    List<ObjectFile.Module> modules;
+    int[] load;                                  // load address per module
+    int[][] externals;                           // per module: external index -> linked address
+    int imageBase, imageWords;
+
+    public static void main(String[] args) {
+        // java Linker [--base N] [--threads N] [--map] [--metrics m.json|m.csv] -o image.sim a.sob b.sob ...
+        // java Linker --list image.sim
+        Linker linker = new Linker();
+        String image = "a.sim", metricsFile = null;
+        boolean map = false;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o") && i + 1 < args.length) {
+                image = args[++i];
+            } else if (args[i].equals("--base") && i + 1 < args.length) {
+                linker.base = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                linker.threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--map")) {
+                map = true;
+            } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                metricsFile = args[++i];
+            } else if (args[i].equals("--list") && i + 1 < args.length) {
+                try {
+                    listImage(args[++i], ObjectCodeWriter.stdout());
+                } catch (IOException e) { e.printStackTrace(); }
+                return;
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        ObjectCodeWriter out = ObjectCodeWriter.stdout();
+        try {
+            List<ObjectFile.Module> modules = new ArrayList<>();
+            for (String f : files) modules.add(ObjectFile.Module.map(f));
+            if (linker.link(modules, image)) {
+                linker.printSummary(out, image);
+                if (map) linker.printMap(out);
+            } else {
+                linker.printErrors(out);
+            }
+        } catch (IOException e) { e.printStackTrace(); }
+        out.flush();
+        if (metricsFile != null) linker.metrics.write(metricsFile);
+    }
+
+    // Links modules (in this order) into imageFile; false when symbols did not resolve (see errors)
+    boolean link(List<ObjectFile.Module> modules, String imageFile) throws IOException {
+        try (Metrics.Phase phase = metrics.phase("link")) {
+            this.modules = modules;
+            layout();
+            defineGlobals();
+            resolveExternals();
+            if (!errors.isEmpty()) return false;
+            writeImage(imageFile);
+            phase.lines(imageWords);
+        }
+        long relocations = 0, references = 0;
+        for (ObjectFile.Module m : modules) {
+            relocations += m.relocations;
+            references += m.references;
+        }
+        metrics.add("link.modules", modules.size());
+        metrics.add("link.globals", names.size());
+        metrics.add("link.relocations", relocations);
+        metrics.add("link.external_refs", references);
+        metrics.add("link.image_words", imageWords);
+        return true;
+    }
+
+    // ================= SYMBOLS =================
+
+    void layout() {
+        load = new int[modules.size()];
+        imageBase = (base >= 0 || modules.isEmpty()) ? Math.max(base, 0) : modules.get(0).origin;
+        long next = imageBase;
+        for (int i = 0; i < modules.size(); i++) {
+            load[i] = (int) next;
+            next += modules.get(i).size;
+        }
+        if ((next - imageBase) * ObjectFile.WORD + IMAGE_HEADER > Integer.MAX_VALUE)
+            throw new IllegalStateException("image too large: " + (next - imageBase) + " words");
+        imageWords = (int) (next - imageBase);
+    }
+
+    int delta(int module) {
+        return load[module] - modules.get(module).origin;
+    }
+
+    // Names are interned straight from the object bytes: no String per symbol
+    void defineGlobals() {
+        for (int i = 0; i < modules.size(); i++) {
+            ObjectFile.Module m = modules.get(i);
+            ByteBuffer buf = m.buf;
+            int delta = delta(i);
+            for (int g = 0, p = m.globalsAt; g < m.globals; g++) {
+                int len = buf.getShort(p + 4);
+                int id = names.intern(buf, p + 6, p + 6 + len);
+                if (definedBy.isDefined(id)) {
+                    errors.add("symbol " + names.name(id) + " defined in " + m.name
+                            + " and " + modules.get(definedBy.get(id)).name);
+                } else {
+                    address.put(id, buf.getInt(p) + delta);
+                    definedBy.put(id, i);
+                }
+                p += 6 + len;
+            }
+        }
+    }
+
+    void resolveExternals() {
+        externals = new int[modules.size()][];
+        for (int i = 0; i < modules.size(); i++) {
+            ObjectFile.Module m = modules.get(i);
+            ByteBuffer buf = m.buf;
+            int[] resolved = new int[m.externals];
+            for (int e = 0, p = m.externalsAt; e < m.externals; e++) {
+                int len = buf.getShort(p);
+                int id = names.intern(buf, p + 2, p + 2 + len);
+                resolved[e] = address.get(id);
+                if (resolved[e] == IntTable.UNDEFINED)
+                    errors.add("undefined symbol " + names.name(id) + " in " + m.name);
+                p += 2 + len;
+            }
+            externals[i] = resolved;
+        }
+    }
+
+    // ================= IMAGE =================
+
+    void writeImage(String imageFile) throws IOException {
+        long bytes = IMAGE_HEADER + (long) imageWords * ObjectFile.WORD;
+        try (FileChannel ch = FileChannel.open(Paths.get(imageFile), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer image = ch.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            image.put(0, IMAGE_MAGIC);
+            image.put(3, IMAGE_VERSION);
+            image.putInt(4, imageBase);
+            image.putInt(8, imageWords);
+
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+            try {
+                pool.submit(() -> IntStream.range(0, modules.size()).parallel()
+                        .forEach(i -> relocate(i, image.duplicate()))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+            image.force();
+        }
+    }
+
+    // Copies module i into its region of the image and patches its operands
+    void relocate(int i, ByteBuffer image) {
+        ObjectFile.Module m = modules.get(i);
+        ByteBuffer buf = m.buf;
+        int delta = delta(i);
+        int at = IMAGE_HEADER + (delta - imageBase) * ObjectFile.WORD; // image offset of address 0 in this module
+
+        // Text runs: one bulk copy each
+        for (int r = 0, p = m.textAt; r < m.runs; r++) {
+            int count = buf.getInt(p + 4);
+            image.put(at + buf.getInt(p) * ObjectFile.WORD, buf, p + 8, count * ObjectFile.WORD);
+            p += 8 + count * ObjectFile.WORD;
+        }
+
+        // Operands holding an address of this module move with it
+        if (delta != 0) {
+            for (int r = 0, p = m.relocationsAt; r < m.relocations; r++, p += 4) {
+                int operand = at + buf.getInt(p) * ObjectFile.WORD + 4;
+                image.putInt(operand, image.getInt(operand) + delta);
+            }
+        }
+
+        // Operands naming another module's symbol get its linked address
+        int[] resolved = externals[i];
+        for (int r = 0, p = m.referencesAt; r < m.references; r++, p += 8) {
+            image.putInt(at + buf.getInt(p) * ObjectFile.WORD + 4, resolved[buf.getInt(p + 4)]);
+        }
+    }
+
+    // ================= OUTPUT =================
+
+    void printSummary(ObjectCodeWriter out, String imageFile) {
+        out.str("=== LINK (").dec(modules.size()).str(" modules) ===").newline().newline();
+        out.str("MODULE", 16).str(" | ").str("LOAD", 8).str(" | ").str("SIZE", 8).str(" | ")
+           .str("GLOBALS", 8).str(" | ").str("EXTERNS", 8).str(" | ").str("RELOCS").newline();
+        out.str("------------------------------------------------------------------").newline();
+        for (int i = 0; i < modules.size(); i++) {
+            ObjectFile.Module m = modules.get(i);
+            out.str(Paths.get(m.name).getFileName().toString(), 16).str(" | ").decLeft(load[i], 8).str(" | ")
+               .decLeft(m.size, 8).str(" | ").decLeft(m.globals, 8).str(" | ").decLeft(m.externals, 8).str(" | ")
+               .dec(m.relocations + m.references).newline();
+        }
+        out.newline().str("Image: ").str(imageFile).str(", ").dec(imageWords).str(" words at ").dec(imageBase).newline();
+    }
+
+    // Global symbols in address order
+    void printMap(ObjectCodeWriter out) {
+        Integer[] ids = new Integer[names.size()];
+        for (int id = 0; id < ids.length; id++) ids[id] = id;
+        Arrays.sort(ids, Comparator.comparingInt(address::get));
+        out.newline().str("SYMBOL", 16).str(" | ").str("ADDRESS", 8).str(" | ").str("MODULE").newline();
+        out.str("----------------------------------------").newline();
+        for (int id : ids) {
+            if (!address.isDefined(id)) continue;
+            out.str(names.name(id), 16).str(" | ").decLeft(address.get(id), 8).str(" | ")
+               .str(Paths.get(modules.get(definedBy.get(id)).name).getFileName().toString()).newline();
+        }
+    }
+
+    void printErrors(ObjectCodeWriter out) {
+        for (String e : errors) out.str("ERROR: ").str(e).newline();
+        out.str("Link failed: ").dec(errors.size()).str(" error(s)").newline();
+    }
+
+    // Loader view of an image: the same "LC<TAB>code" lines as the Pass 2 listing
+    static void listImage(String imageFile, ObjectCodeWriter out) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(imageFile), StandardOpenOption.READ)) {
+            ByteBuffer image = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (image.limit() < IMAGE_HEADER || image.get(0) != IMAGE_MAGIC[0] || image.get(1) != IMAGE_MAGIC[1]
+                    || image.get(2) != IMAGE_MAGIC[2] || image.get(3) != IMAGE_VERSION)
+                throw new IOException(imageFile + ": not an image file");
+            int imageBase = image.getInt(4), words = image.getInt(8);
+            out.str("LC\tMachine Code").newline();
+            out.str("----------------------------").newline();
+            for (int w = 0, p = IMAGE_HEADER; w < words; w++, p += ObjectFile.WORD) {
+                byte kind = image.get(p);
+                if (kind == ObjectFile.INSTRUCTION) {
+                    int op = image.get(p + 1) & 0xFF;
+                    out.dec(imageBase + w).tab();
+                    AssemblerPass2.machineOpcode(out, (op == ObjectFile.NO_OPCODE) ? Opcodes.NONE : op)
+                       .dec(image.get(p + 2)).dec(image.getInt(p + 4), 3).newline();
+                } else if (kind == ObjectFile.DATA) {
+                    out.dec(imageBase + w).tab().dec(image.getInt(p + 4), 6).newline();
+                }
+            }
+            out.flush();
+        }
+    }
+}
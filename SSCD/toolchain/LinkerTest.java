@@ -0,0 +1,74 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Checks for relocatable objects and the linker (no test framework: run it, exit status 1 on a failure)
+//   javac -sourcepath .:../common:../A1:../A2 LinkerTest.java && java -cp .:../common:../A1:../A2 LinkerTest
+public class LinkerTest {
+
+    static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        a1.setupTables();
+        relocatedOperandMovesWithBase();
+        replacedWordDropsItsRelocation();
+        externalResolvesAcrossUnits();
+        System.out.println(failures == 0 ? "All tests passed" : failures + " test(s) failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    // Assembled at 100, loaded at 500: the operand naming A moves by +400
+    static void relocatedOperandMovesWithBase() throws IOException {
+        String image = link(500, "START 100 -\nA MOVER AREG A\nEND - -\n");
+        check("relocated operand moves with --base", image.contains("500\t") && image.trim().endsWith("1500"), image);
+    }
+
+    // The second START puts B's DC over A's MOVER; the MOVER's relocation must not patch the DC
+    static void replacedWordDropsItsRelocation() throws IOException {
+        String image = link(500, "START 100 -\nA MOVER AREG A\nSTART 100 -\nB DC 5 -\nEND - -\n");
+        check("word replaced by a second START keeps no relocation", image.contains("500\t000005"), image);
+    }
+
+    // X is defined in the second unit; the first unit's operand gets X's linked address
+    static void externalResolvesAcrossUnits() throws IOException {
+        String image = link(200, "START 100 -\nMOVER AREG X\nA DC 1 -\nEND - -\n",
+                "START 0 -\nX DC 5 -\nADD BREG A\nEND - -\n");
+        check("external operand resolves to the other unit", image.contains("200\t") && image.contains("202\t000005")
+                && image.contains("1202\n") && image.contains("2201\n"), image);
+    }
+
+    // Assembles every source to an object, links them at base and returns the image listing
+    static String link(int base, String... sources) throws IOException {
+        List<ObjectFile.Module> modules = new ArrayList<>();
+        for (int i = 0; i < sources.length; i++) {
+            a1 pass1 = new a1();
+            ByteArrayOutputStream ic = new ByteArrayOutputStream();
+            pass1.writeBinaryIC(new StreamSource(new ByteArrayInputStream(sources[i].getBytes(StandardCharsets.US_ASCII))), ic);
+            AssemblerPass2 pass2 = new AssemblerPass2();
+            try (ICRecord.Reader in = new ICRecord.Reader(new ByteArrayInputStream(ic.toByteArray()))) {
+                modules.add(new ObjectFile.Module("unit" + i, ByteBuffer.wrap(pass2.toObject(in).toByteArray())));
+            }
+        }
+        Path file = Files.createTempFile("linkertest", ".sim");
+        try {
+            Linker linker = new Linker();
+            linker.base = base;
+            if (!linker.link(modules, file.toString())) return "link failed: " + linker.errors;
+            ObjectCodeWriter out = ObjectCodeWriter.memory();
+            Linker.listImage(file.toString(), out);
+            return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    static void check(String name, boolean ok, String detail) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            System.out.println("  got: " + detail);
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Pipelined build of one unit: macro expansion, Pass 1 and Pass 2 run at the same time on their
+// own threads, connected by bounded BatchQueues instead of fully materialized stage outputs.
+//
+//   MacroAssembler.expandSource --text--> a1 (binary IC + DEF records) --IC--> AssemblerPass2.runStreaming
+//
+// Pass 1 writes a DEF record when a label gets its address, so Pass 2 translates everything except
+// forward references as soon as it arrives; those wait until their DEF (or the symbol section).
+// Wall time per unit approaches the slowest stage instead of the sum of all three.
+class Pipeline {
+
+    static BuildDriver.Unit build(String file, String library) {
+        BuildDriver.Unit u = new BuildDriver.Unit(file);
+        long start = System.nanoTime();
+        BatchQueue text = new BatchQueue();
+        BatchQueue ic = new BatchQueue();
+        AtomicReference<Exception> failure = new AtomicReference<>(); // first stage to fail
+        ExecutorService stages = Executors.newFixedThreadPool(2);
+        try {
+            // Library first, so labelled calls of its macros are read as such
+            long setupStart = System.nanoTime();
+            MacroAssembler macros = new MacroAssembler();
+            if (library != null) MacroLibrary.load(macros, library);
+            String[][] source = MacroAssembler.readSource(file, macros.mnt.keySet());
+            long setup = System.nanoTime() - setupStart;
+            u.lines = source.length;
+
+            // Macro expansion
+            Future<?> macro = stages.submit(() -> {
+                long t = System.nanoTime();
+                try (ObjectCodeWriter w = new ObjectCodeWriter(text.sink())) {
+                    macros.markers = false;
+                    macros.metrics = BuildDriver.metrics;
+                    macros.pass1(source);
+                    macros.expandSource(source, w, false);
+                    macros.recordCache();
+                } catch (IOException | RuntimeException e) {
+                    fail(failure, e, text, ic);
+                } finally {
+                    u.macroNs = System.nanoTime() - t + setup;
+                }
+            });
+
+            // Pass 1
+            a1 pass1 = new a1();
+            pass1.inlineDefinitions = true;
+            pass1.metrics = BuildDriver.metrics;
+            Future<?> first = stages.submit(() -> {
+                long t = System.nanoTime();
+                try (InputStream in = text.input(); OutputStream out = ic.output()) {
+                    pass1.writeBinaryIC(new StreamSource(in), out);
+                } catch (IOException | RuntimeException e) {
+                    fail(failure, e, text, ic);
+                } finally {
+                    u.pass1Ns = System.nanoTime() - t;
+                }
+            });
+
+            // Pass 2 on this thread
+            long t = System.nanoTime();
+            AssemblerPass2 pass2 = new AssemblerPass2();
+            pass2.out = ObjectCodeWriter.memory();
+            pass2.metrics = BuildDriver.metrics;
+            Exception pass2Failure = null;
+            try (ICRecord.Reader in = new ICRecord.Reader(ic.input())) {
+                pass2.runStreaming(in);
+            } catch (IOException | RuntimeException e) {
+                pass2Failure = e;
+                fail(failure, e, text, ic);
+            } finally {
+                u.pass2Ns = System.nanoTime() - t;
+            }
+            macro.get();
+            first.get();
+            // Undefined symbols also make Pass 2 fail; report them the way the sequential build does
+            if ((failure.get() == null || failure.get() == pass2Failure) && !pass1.fixups.isEmpty()) {
+                u.error = "undefined symbol(s) " + pass1.fixups.keySet();
+                return u;
+            }
+            if (failure.get() != null) {
+                u.error = failure.get().toString();
+                return u;
+            }
+            u.icRecords = (int) pass1.icRecords;
+            u.object = pass2.out.toByteArray();
+            u.objectBytes = u.object.length;
+            BuildDriver.writeObject(u);
+        } catch (ExecutionException | IOException | RuntimeException e) {
+            u.error = e.toString();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            u.error = e.toString();
+        } finally {
+            stages.shutdownNow();
+            u.wallNs = System.nanoTime() - start;
+        }
+        return u;
+    }
+
+    // Keeps the first failure (the others are just "pipeline cancelled") and releases every stage
+    static void fail(AtomicReference<Exception> failure, Exception e, BatchQueue... queues) {
+        failure.compareAndSet(null, e);
+        for (BatchQueue q : queues) q.cancel();
+    }
+}
@@ -0,0 +1,13 @@
+MACRO
+INCR &ARG1 &ARG2
+ADD AREG &ARG1
+SUB BREG &ARG2
+MEND
+START 100 -
+MOVER AREG A
+INCR A B
+LOOP INCR B A
+MOVEM AREG B
+A DS 02 -
+B DC 05 -
+END - -
@@ -0,0 +1,14 @@
+MACRO
+SWAP &X &Y
+MOVER AREG &X
+MOVER BREG &Y
+MOVEM AREG &Y
+MOVEM BREG &X
+MEND
+START 200 -
+SWAP P Q
+SWAP Q P
+MULT CREG P
+P DC 07 -
+Q DC 09 -
+END - -